@@ -1,13 +1,11 @@
 package gitlet;
 
-import java.io.Serializable;
-
 /** Blob class that stores original name of file (in working
  *  directory) and also the sha-1 of the file.
  *  Blobs only stores data of files in the .gitlet directory.
  *  @author Brian Unggul
  */
-public class Blob implements Serializable {
+public class Blob {
 
     /** The original file name of the file pointed to
      *  by this blob.
@@ -15,17 +13,39 @@ public class Blob implements Serializable {
     private String fileName;
 
     /** The sha-1 of the file pointed to by this blob. */
-    private String fileSha1;
+    private ObjectId fileSha1;
 
     /** Blob constructor.
      * @param name The name of the original file
      * @param sha1 The sha1 of the original file
      */
     Blob(String name, String sha1) {
+        this(name, ObjectId.fromHex(sha1));
+    }
+
+    /** Blob constructor.
+     * @param name The name of the original file
+     * @param sha1 The sha1 of the original file
+     */
+    Blob(String name, ObjectId sha1) {
         fileName = name;
         fileSha1 = sha1;
     }
 
+    /** Method to write this blob into an encoding.
+     * @param out The encoding */
+    void encode(Codec.Output out) {
+        out.string(fileName);
+        out.id(fileSha1);
+    }
+
+    /** Method to read a blob written by encode().
+     * @param in The encoding
+     * @return The blob */
+    static Blob decode(Codec.Input in) {
+        return new Blob(in.string(), in.id());
+    }
+
     /** Method to get the original name of file.
      * @return name of the file */
     public String getFileName() {
@@ -37,6 +57,14 @@ public class Blob implements Serializable {
      * @return sha-1 of the file
      */
     public String getFileSha1() {
+        return fileSha1.name();
+    }
+
+    /** Method to get the sha-1 of the file in the .gitlet
+     * directory as an id.
+     * @return sha-1 of the file
+     */
+    ObjectId getId() {
         return fileSha1;
     }
 
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Chunker class that cuts a stream of bytes into chunks at points
+ *  chosen by the bytes themselves (FastCDC), so that an edit in the
+ *  middle of a large file only changes the chunks around it, and the
+ *  chunks before and after it are found again unchanged. A gear hash
+ *  is rolled over the bytes, and a chunk ends where the top bits of
+ *  the hash are all zero. No chunk is cut shorter than MIN_SIZE or
+ *  longer than MAX_SIZE, and more bits must be zero to cut a chunk
+ *  shorter than AVG_SIZE than a longer one, which keeps most chunks
+ *  close to AVG_SIZE.
+ *  @author Brian Unggul
+ */
+class Chunker {
+
+    /** The smallest size of a chunk, except for the last one. */
+    static final int MIN_SIZE = 16 << 10;
+
+    /** The size most chunks are close to. */
+    static final int AVG_SIZE = 64 << 10;
+
+    /** The largest size of a chunk. */
+    static final int MAX_SIZE = 256 << 10;
+
+    /** The bits of the hash that must be zero to end a chunk shorter
+     *  than AVG_SIZE. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+
+    /** The bits of the hash that must be zero to end a chunk longer
+     *  than AVG_SIZE. */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    /** The random number the hash adds for each value of a byte. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9E3779B97F4A7C15L;
+            long value = seed;
+            value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+            value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = value ^ (value >>> 31);
+        }
+    }
+
+    /** The stream being cut. */
+    private final InputStream in;
+
+    /** The bytes read from the stream but not yet handed out. */
+    private final byte[] buffer;
+
+    /** The position of the first byte not yet handed out. */
+    private int start;
+
+    /** The end of the bytes read into the buffer. */
+    private int end;
+
+    /** Whether or not the whole stream has been read. */
+    private boolean eof;
+
+    /** Constructor for a chunker over a stream.
+     * @param input The stream */
+    Chunker(InputStream input) {
+        in = input;
+        buffer = new byte[2 * MAX_SIZE];
+    }
+
+    /** Method to get the next chunk of the stream.
+     * @return The chunk, or null at the end of the stream */
+    byte[] next() throws IOException {
+        if (end - start < MAX_SIZE && !eof) {
+            if (start + MAX_SIZE > buffer.length) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            while (end < start + MAX_SIZE && !eof) {
+                int n = in.read(buffer, end, start + MAX_SIZE - end);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    end += n;
+                }
+            }
+        }
+        if (start == end) {
+            return null;
+        }
+        int length = cut(buffer, start, end - start);
+        byte[] chunk = Arrays.copyOfRange(buffer, start, start + length);
+        start += length;
+        return chunk;
+    }
+
+    /** Method to find where the chunk that starts at a position ends.
+     * @param data The bytes
+     * @param pos The start of the chunk
+     * @param length The number of bytes after POS that can be used
+     * @return The length of the chunk */
+    static int cut(byte[] data, int pos, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int limit = Math.min(length, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[pos + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[data[pos + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+}
@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Codec class that holds the binary format the commits, the staging
+ *  state and the stat cache are stored in, in place of Java
+ *  serialization. Every encoding starts with a four-byte magic number
+ *  naming what it holds and a version number, so a file of the wrong
+ *  kind or of a newer layout is refused instead of misread. Numbers
+ *  are written as varints (seven bits per byte, low bits first, the
+ *  top bit set on every byte but the last), ids as their 20 raw
+ *  bytes, and strings as UTF-8 preceded by their length. A string
+ *  that was already written is written again only as the varint of
+ *  its position in the encoding, so a path that shows up in several
+ *  places is stored once.
+ *  @author Brian Unggul
+ */
+class Codec {
+
+    /** The string tag of a null string. */
+    private static final int NULL = 0;
+
+    /** The string tag of a string that is written out in full; tags
+     *  above it refer back to an earlier string. */
+    private static final int NEW = 1;
+
+    /** An encoding being written. */
+    static class Output {
+
+        /** The bytes written so far. */
+        private final ByteArrayOutputStream bytes;
+
+        /** The position of every string written so far. */
+        private final HashMap<String, Integer> strings;
+
+        /** Constructor for an encoding of the kind MAGIC, in layout
+         *  VERSION.
+         * @param magic The magic number of the kind of encoding
+         * @param version The version of its layout */
+        Output(int magic, int version) {
+            bytes = new ByteArrayOutputStream();
+            strings = new HashMap<>();
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes.write(magic >>> shift);
+            }
+            varint(version);
+        }
+
+        /** Method to write a number as a varint. Negative numbers
+         *  take ten bytes, so they are best avoided.
+         * @param value The number */
+        void varint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                bytes.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        /** Method to write a boolean as one byte.
+         * @param value The boolean */
+        void bool(boolean value) {
+            bytes.write(value ? 1 : 0);
+        }
+
+        /** Method to write a string, which may be null. A string that
+         *  was already written is only written as a reference to it.
+         * @param str The string */
+        void string(String str) {
+            if (str == null) {
+                varint(NULL);
+                return;
+            }
+            Integer pos = strings.get(str);
+            if (pos != null) {
+                varint(NEW + 1 + pos);
+                return;
+            }
+            strings.put(str, strings.size());
+            byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+            varint(NEW);
+            varint(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        /** Method to write an id as its raw bytes.
+         * @param id The id */
+        void id(ObjectId id) {
+            bytes.write(id.toBytes(), 0, ObjectId.BYTES);
+        }
+
+        /** Method to get the encoding.
+         * @return The bytes written */
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /** An encoding being read. Any read past its end, or of a string
+     *  reference that points nowhere, is reported as a corrupt
+     *  encoding. */
+    static class Input {
+
+        /** The encoding. */
+        private final byte[] data;
+
+        /** The position of the next byte to be read. */
+        private int pos;
+
+        /** The strings read so far, in order. */
+        private final ArrayList<String> strings;
+
+        /** The version of the layout of the encoding. */
+        private final int version;
+
+        /** Constructor for reading DATA, which must be an encoding of
+         *  the kind MAGIC, in a layout no newer than MAXVERSION.
+         * @param data The encoding
+         * @param magic The magic number of the kind of encoding
+         * @param maxVersion The newest layout that can be read */
+        Input(byte[] data, int magic, int maxVersion) {
+            this.data = data;
+            strings = new ArrayList<>();
+            int head = 0;
+            for (int i = 0; i < 4; i += 1) {
+                head = head << 8 | next();
+            }
+            if (head != magic) {
+                throw Utils.error("Unknown data format.");
+            }
+            version = (int) varint();
+            if (version < 1 || version > maxVersion) {
+                throw Utils.error("Unsupported data version %d.", version);
+            }
+        }
+
+        /** Method to get the version of the layout of the encoding.
+         * @return The version */
+        int version() {
+            return version;
+        }
+
+        /** Method to read the next byte.
+         * @return The byte, from 0 to 255 */
+        private int next() {
+            if (pos >= data.length) {
+                throw Utils.error("Corrupt data.");
+            }
+            return data[pos++] & 0xff;
+        }
+
+        /** Method to read a varint.
+         * @return The number */
+        long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = next();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw Utils.error("Corrupt data.");
+        }
+
+        /** Method to read a varint that counts something, such as the
+         *  number of entries that follow.
+         * @return The count */
+        int count() {
+            long value = varint();
+            if (value > data.length - pos) {
+                throw Utils.error("Corrupt data.");
+            }
+            return (int) value;
+        }
+
+        /** Method to read a boolean.
+         * @return The boolean */
+        boolean bool() {
+            return next() != 0;
+        }
+
+        /** Method to read a string, which may be null.
+         * @return The string */
+        String string() {
+            long tag = varint();
+            if (tag == NULL) {
+                return null;
+            } else if (tag > NEW) {
+                if (tag - NEW - 1 >= strings.size()) {
+                    throw Utils.error("Corrupt data.");
+                }
+                return strings.get((int) (tag - NEW - 1));
+            }
+            int length = count();
+            String str = new String(data, pos, length,
+                    StandardCharsets.UTF_8);
+            pos += length;
+            strings.add(str);
+            return str;
+        }
+
+        /** Method to read an id.
+         * @return The id */
+        ObjectId id() {
+            if (data.length - pos < ObjectId.BYTES) {
+                throw Utils.error("Corrupt data.");
+            }
+            ObjectId id = ObjectId.fromBytes(data, pos);
+            pos += ObjectId.BYTES;
+            return id;
+        }
+
+        /** Method to check that the whole encoding has been read. */
+        void end() {
+            if (pos != data.length) {
+                throw Utils.error("Corrupt data.");
+            }
+        }
+    }
+
+}
@@ -1,13 +1,23 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 /** Commit class that stores data about file(s) that
  *  are committed.
  *  @author Brian Unggul*/
-public class Commit implements Serializable {
+public class Commit {
+
+    /** The number of milliseconds in a second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** The magic number of an encoded commit ("GCMT"). */
+    private static final int MAGIC = 0x47434d54;
+
+    /** The version of the encoding of a commit. */
+    private static final int VERSION = 1;
 
     /** The date when this commit was created. */
     private String date;
@@ -15,102 +25,174 @@ public class Commit implements Serializable {
     /** The log message of this commit. */
     private String logMessage;
 
-    /** The hashmap that stores all the blobs this commit
-     *  is pointing to.
-     */
+    /** The id of the tree of the files this commit tracks. */
+    private ObjectId tree;
+
+    /** The blobs this commit is pointing to, keyed by file name,
+     *  which are only read from the tree when they are asked for. */
     private HashMap<String, Blob> blobs;
 
-    /** The parent1 of this commit. */
-    private Commit parent1;
+    /** The sha1 of the parent1 of this commit. */
+    private ObjectId parent1;
 
-    /** The parent2 of this commit. */
-    private Commit parent2;
+    /** The sha1 of the parent2 of this commit. */
+    private ObjectId parent2;
+
+    /** The generation number of this commit: 1 for the initial
+     *  commit, and one more than the largest generation of its
+     *  parents otherwise. */
+    private int generation;
+
+    /** The store the parents of this commit are read from. */
+    private ObjectStore store;
 
     /** The sha1 of this commit. */
-    private String sha1;
+    private ObjectId sha1;
 
     /** Constructor for the initial commit. */
     Commit() {
         date = "Thu Jan 1 00:00:00 1970 -0800";
         logMessage = "initial commit";
-        blobs = new HashMap<>();
+        tree = ObjectId.fromHex(Tree.emptyId());
         parent1 = null;
         parent2 = null;
+        generation = 1;
         sha1 = compSha1();
     }
 
-    /** Constructor for an ordinary commit.
+    /** Constructor for a commit read from its encoding. Its sha1 is
+     *  computed again from what was read.
+     * @param in The encoding, positioned after its header */
+    private Commit(Codec.Input in) {
+        tree = in.id();
+        long parents = in.varint();
+        if (parents > 2) {
+            throw Utils.error("Corrupt data.");
+        }
+        parent1 = parents > 0 ? in.id() : null;
+        parent2 = parents > 1 ? in.id() : null;
+        generation = (int) in.varint();
+        date = in.string();
+        logMessage = in.string();
+        in.end();
+        sha1 = compSha1();
+    }
+
+    /** Method to read a commit from the bytes written by encode().
+     * @param data The encoded commit
+     * @return The commit */
+    static Commit decode(byte[] data) {
+        return new Commit(new Codec.Input(data, MAGIC, VERSION));
+    }
+
+    /** Method to encode this commit in the format of Codec: the id of
+     *  its tree, the number of parents and their ids, the generation
+     *  number, the date and the log message. Its own sha1 is not
+     *  stored, since it is computed from the rest.
+     * @return The encoded commit */
+    byte[] encode() {
+        Codec.Output out = new Codec.Output(MAGIC, VERSION);
+        out.id(tree);
+        out.varint(numParents());
+        for (ObjectId parent : getParentIds()) {
+            out.id(parent);
+        }
+        out.varint(generation);
+        out.string(date);
+        out.string(logMessage);
+        return out.toByteArray();
+    }
+
+    /** Constructor for an ordinary commit. Its tree is the parent's
+     *  tree with only the removed and staged files changed, so it
+     *  shares every other node with the parent's tree.
      * @param message The log message
      * @param parent The parent1
      * @param stageBlobs The arraylist of staged blobs
      * @param nextRem The arraylist of rm'ed blobs
      */
-    @SuppressWarnings("unchecked")
     Commit(String message, Commit parent, ArrayList<Blob> stageBlobs,
            ArrayList<String> nextRem) {
         date = Utils.getDate();
         logMessage = message;
-        blobs = new HashMap<>();
-        for (Blob blob : parent.getBlobs().values()) {
-            String name = blob.getFileName();
-            if (!nextRem.contains(name)) {
-                blobs.put(name, blob);
-            }
-        }
-        for (Blob blob : stageBlobs) {
-            String name = blob.getFileName();
-            blobs.put(name, blob);
-        }
-        parent1 = parent;
+        tree = ObjectId.fromHex(
+                apply(parent.getTree(), stageBlobs, nextRem).getId());
+        parent1 = parent.sha1;
         parent2 = null;
+        generation = parent.generation + 1;
+        store = parent.store;
         sha1 = compSha1();
     }
 
-    /** Constructor for a merge commit.
+    /** Constructor for a merge commit. The merge stages and removes
+     *  every file it takes from the given branch, so like an ordinary
+     *  commit its tree is parent1's tree with only those files
+     *  changed.
      * @param message The log message
      * @param p1 The parent1
      * @param p2 The parent2
+     * @param stage The stage containing blobs
      * @param nextRem The arraylist of blobs that
      * are staged to be removed
-     * @param stage The stage containing blobs
-     * @param toTrack The arraylist of file names that are
-     * to be tracked in this commit
      */
-    Commit(String message, Commit p1, Commit p2, ArrayList<String>
-            nextRem, ArrayList<Blob> stage, ArrayList<String> toTrack) {
+    Commit(String message, Commit p1, Commit p2, ArrayList<Blob> stage,
+           ArrayList<String> nextRem) {
         date = Utils.getDate();
         logMessage = message;
-        blobs = new HashMap<>();
-        for (Blob blob : p1.getBlobs().values()) {
-            String name = blob.getFileName();
-            if (!nextRem.contains(name) && toTrack.contains(name)) {
-                blobs.put(name, blob);
-            }
-        }
-        ArrayList<String> blobSha1 = new ArrayList<>();
-        for (Blob blob : blobs.values()) {
-            blobSha1.add(blob.getFileSha1());
-        }
-        for (Blob blob : p2.getBlobs().values()) {
-            String name = blob.getFileName();
-            if (!nextRem.contains(name) && !blobSha1.contains(
-                    blob.getFileSha1()) && toTrack.contains(name)) {
-                blobs.put(name, blob);
-            }
+        tree = ObjectId.fromHex(
+                apply(p1.getTree(), stage, nextRem).getId());
+        parent1 = p1.sha1;
+        parent2 = p2.sha1;
+        generation = Math.max(p1.generation, p2.generation) + 1;
+        store = p1.store;
+        sha1 = compSha1();
+    }
+
+    /** Method to apply the staged and removed files to a tree, as the
+     *  constructors do for the tree of a new commit.
+     * @param files The tree of the parent
+     * @param stage The staged blobs
+     * @param nextRem The names of the removed files
+     * @return The tree of the new commit */
+    static Tree apply(Tree files, ArrayList<Blob> stage,
+                      ArrayList<String> nextRem) {
+        for (String name : nextRem) {
+            files = files.without(name);
         }
         for (Blob blob : stage) {
-            String name = blob.getFileName();
-            blobs.put(name, blob);
+            files = files.with(blob.getFileName(), blob.getFileSha1());
         }
-        parent1 = p1;
-        parent2 = p2;
-        sha1 = compSha1();
+        return files;
     }
 
-    /** Method to compute the sha1 of this commit.
+    /** Method to compute the sha1 of this commit. Like git's commit
+     *  objects, the hash only covers this commit's own data: the
+     *  id of its tree, the ids of its parents, its date and its log
+     *  message, written out in a fixed text format. It does not
+     *  depend on the ancestry or on how the commit is stored.
      * @return The computed sha1 of this commit */
-    String compSha1() {
-        return Utils.sha1(Utils.serialize(this));
+    ObjectId compSha1() {
+        byte[] body = contents().getBytes(StandardCharsets.UTF_8);
+        return ObjectId.fromHex(
+                Utils.sha1("commit " + body.length + "\0", body));
+    }
+
+    /** Method to get the text whose hash is the sha1 of this commit:
+     *  the id of its tree, followed by the parents, the date and the
+     *  log message.
+     * @return The canonical contents of this commit */
+    String contents() {
+        StringBuilder str = new StringBuilder();
+        str.append("tree ").append(tree.name()).append("\n");
+        if (parent1 != null) {
+            str.append("parent ").append(parent1.name()).append("\n");
+        }
+        if (parent2 != null) {
+            str.append("parent ").append(parent2.name()).append("\n");
+        }
+        str.append("date ").append(date).append("\n\n");
+        str.append(logMessage);
+        return str.toString();
     }
 
     /** Method to check if this commit points to a blob with the
@@ -119,7 +201,10 @@ public class Commit implements Serializable {
      * @return true or false whether the blob exists
      */
     boolean blobExists(String name) {
-        return blobs.containsKey(name);
+        if (blobs != null) {
+            return blobs.containsKey(name);
+        }
+        return getTree().get(name) != null;
     }
 
     /** Method to get the blob pointed to by this commit that has
@@ -129,7 +214,7 @@ public class Commit implements Serializable {
      */
     Blob getBlob(String name) {
         assert blobExists(name);
-        return blobs.get(name);
+        return getBlobs().get(name);
     }
 
     /** Method to check if this commit has a non-null parent1.
@@ -144,18 +229,56 @@ public class Commit implements Serializable {
         return parent2 != null;
     }
 
-    /** Method to get parent1.
+    /** Method to get parent1, which is read from the store
+     *  the first time it is asked for.
      * @return This commit's parent1 */
     Commit getParent1() {
-        return parent1;
+        return hasParent1() ? store.readCommit(parent1) : null;
     }
 
-    /** Method to get parent2.
+    /** Method to get parent2, which is read from the store
+     *  the first time it is asked for.
      * @return This commit's parent2 */
     Commit getParent2() {
+        return hasParent2() ? store.readCommit(parent2) : null;
+    }
+
+    /** Method to get the sha1 of parent1.
+     * @return The sha1 of this commit's parent1 */
+    ObjectId getParent1Id() {
+        return parent1;
+    }
+
+    /** Method to get the sha1 of parent2.
+     * @return The sha1 of this commit's parent2 */
+    ObjectId getParent2Id() {
         return parent2;
     }
 
+    /** Method to get the ids of the parents of this commit.
+     * @return The array of parent ids, parent1 first */
+    ObjectId[] getParentIds() {
+        if (hasParent2()) {
+            return new ObjectId[] {parent1, parent2};
+        } else if (hasParent1()) {
+            return new ObjectId[] {parent1};
+        }
+        return new ObjectId[0];
+    }
+
+    /** Method to get the generation number of this commit.
+     * @return The generation number */
+    int getGeneration() {
+        return generation;
+    }
+
+    /** Method to set the store the parents of this commit are
+     *  read from.
+     * @param objectStore The store of this commit */
+    void setStore(ObjectStore objectStore) {
+        store = objectStore;
+    }
+
     /** Method to get the number of parents of this commit that
      *  are not null.
      * @return the number of non-null parents
@@ -177,31 +300,67 @@ public class Commit implements Serializable {
         return date;
     }
 
+    /** Method to get the time when this commit was created.
+     * @return The time, in seconds since the epoch */
+    long getTimestamp() {
+        return Utils.parseDate(date).getTime() / MILLIS_PER_SECOND;
+    }
+
     /** Method to get the log message of this commit.
      * @return The log message of this commit */
     String getLogMessage() {
         return logMessage;
     }
 
-    /** Method to get the hashmap of blobs of this commit.
+    /** Method to get the hashmap of blobs of this commit, which is
+     *  read from its tree the first time it is asked for.
      * @return THe hashmap of this commit's blobs */
     HashMap<String, Blob> getBlobs() {
+        if (blobs == null) {
+            blobs = new HashMap<>();
+            for (Map.Entry<String, String> entry
+                    : getTree().entries().entrySet()) {
+                blobs.put(entry.getKey(),
+                        new Blob(entry.getKey(), entry.getValue()));
+            }
+        }
         return blobs;
     }
 
+    /** Method to get the id of the tree of this commit.
+     * @return The id of the tree */
+    String getTreeId() {
+        return tree.name();
+    }
+
+    /** Method to get the tree of this commit.
+     * @return The tree of the files this commit tracks */
+    Tree getTree() {
+        return store.readTree(tree.name());
+    }
+
     /** Method to get the sha1 of this commit.
      * @return The sha1 of this commit */
-    String getSha1() {
+    ObjectId getId() {
         return sha1;
     }
 
-    /** Method to get the HashSet of the parent commits.
-     * @param history The hashset of parent commits */
-    void getParentHistory(ArrayList<String> history) {
-        history.add(this.getSha1());
-        if (hasParent1()) {
-            getParent1().getParentHistory(history);
-        }
+    /** Method to get the sha1 of this commit in hexadecimal, as it is
+     *  shown to the person.
+     * @return The sha1 of this commit */
+    String getSha1() {
+        return sha1.name();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Commit
+                && sha1.equals(((Commit) obj).sha1);
+    }
+
+    @Override
+    public int hashCode() {
+        return sha1.hashCode();
     }
 
 }
@@ -0,0 +1,260 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/** CommitGraph class that keeps the shape of the history in one binary
+ *  file, so ancestry questions can be answered without reading any
+ *  commit objects. After an 8-byte header ("CGPH" and a version
+ *  number) the file holds one fixed-width record per commit, in the
+ *  order the commits were written, so parents always come before
+ *  their children:
+ *  <pre>
+ *      20 bytes  the commit id
+ *       4 bytes  the position of parent1, or -1
+ *       4 bytes  the position of parent2, or -1
+ *       4 bytes  the generation number
+ *       8 bytes  the commit time, in seconds since the epoch
+ *  </pre>
+ *  The file is memory-mapped for reading and appended to when a commit
+ *  is written.
+ *  @author Brian Unggul
+ */
+class CommitGraph implements MergeBase.Ancestry {
+
+    /** The first four bytes of a commit-graph file ("CGPH"). */
+    private static final int MAGIC = 0x43475048;
+
+    /** The version of the record layout. */
+    private static final int VERSION = 1;
+
+    /** The size of the header in bytes. */
+    private static final int HEADER = 8;
+
+    /** The size of a record in bytes. */
+    private static final int RECORD = ObjectId.BYTES + 4 + 4 + 4 + 8;
+
+    /** The offset of parent1 in a record. */
+    private static final int PARENT1 = ObjectId.BYTES;
+
+    /** The offset of parent2 in a record. */
+    private static final int PARENT2 = PARENT1 + 4;
+
+    /** The offset of the generation number in a record. */
+    private static final int GENERATION = PARENT2 + 4;
+
+    /** The offset of the commit time in a record. */
+    private static final int TIME = GENERATION + 4;
+
+    /** The position used for a missing parent. */
+    static final int NONE = -1;
+
+    /** The commit-graph file. */
+    private final File file;
+
+    /** The mapped contents of the file, or null if the file has been
+     *  appended to since it was last mapped. */
+    private MappedByteBuffer buffer;
+
+    /** The number of records in the file. */
+    private int size;
+
+    /** The positions of the commits whose ids have been read so far. */
+    private final HashMap<ObjectId, Integer> positions;
+
+    /** The records at this position and above have had their ids put
+     *  into positions. */
+    private int scanned;
+
+    /** Constructor for the commit graph stored in FILE, creating the
+     *  file if it does not exist. A last record cut short by a crash
+     *  is cut off; its commit is added again when it is next needed.
+     * @param graphFile The commit-graph file */
+    CommitGraph(File graphFile) {
+        file = graphFile;
+        positions = new HashMap<>();
+        if (!file.isFile()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION);
+            Utils.writeAtomically(file, header.array());
+        }
+        long length = file.length();
+        if (length < HEADER) {
+            throw Utils.error("Corrupt commit graph %s.", file);
+        }
+        size = (int) ((length - HEADER) / RECORD);
+        if ((length - HEADER) % RECORD != 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset(size));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        scanned = size;
+    }
+
+    /** Method to get the number of commits in this graph.
+     * @return The number of commits */
+    int size() {
+        return size;
+    }
+
+    /** Method to get the mapped contents of the file, mapping it
+     *  again if it has grown.
+     * @return The mapped buffer */
+    private MappedByteBuffer buffer() {
+        if (buffer == null) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        0, HEADER + (long) size * RECORD);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw Utils.error("Corrupt commit graph %s.", file);
+            }
+        }
+        return buffer;
+    }
+
+    /** Method to get the offset of a record in the file.
+     * @param pos The position of the record
+     * @return The offset of the record */
+    private static int offset(int pos) {
+        return HEADER + pos * RECORD;
+    }
+
+    /** Method to get the id of the commit at a position.
+     * @param pos The position of the commit
+     * @return The commit id */
+    ObjectId id(int pos) {
+        return ObjectId.read(buffer(), offset(pos));
+    }
+
+    /** Method to get the position of the commit with the specified id.
+     *  Records are scanned from the newest one backwards, since the
+     *  commits asked for are almost always recent ones.
+     * @param id The commit id
+     * @return The position of the commit, or NONE if it is not here */
+    int indexOf(ObjectId id) {
+        Integer pos = positions.get(id);
+        while (pos == null && scanned > 0) {
+            scanned -= 1;
+            ObjectId scannedID = id(scanned);
+            positions.put(scannedID, scanned);
+            if (scannedID.equals(id)) {
+                pos = scanned;
+            }
+        }
+        return pos == null ? NONE : pos;
+    }
+
+    /** Method to check if the commit with the specified id is in
+     *  this graph.
+     * @param id The commit id
+     * @return Whether or not the commit is in this graph */
+    boolean contains(ObjectId id) {
+        return indexOf(id) != NONE;
+    }
+
+    /** Method to get the position of parent1 of a commit.
+     * @param pos The position of the commit
+     * @return The position of parent1, or NONE */
+    int parent1(int pos) {
+        return buffer().getInt(offset(pos) + PARENT1);
+    }
+
+    /** Method to get the position of parent2 of a commit.
+     * @param pos The position of the commit
+     * @return The position of parent2, or NONE */
+    int parent2(int pos) {
+        return buffer().getInt(offset(pos) + PARENT2);
+    }
+
+    @Override
+    public int[] parents(int pos) {
+        int p1 = parent1(pos);
+        int p2 = parent2(pos);
+        if (p2 != NONE) {
+            return new int[] {p1, p2};
+        } else if (p1 != NONE) {
+            return new int[] {p1};
+        }
+        return new int[0];
+    }
+
+    @Override
+    public int generation(int pos) {
+        return buffer().getInt(offset(pos) + GENERATION);
+    }
+
+    /** Method to get the time a commit was made.
+     * @param pos The position of the commit
+     * @return The commit time, in seconds since the epoch */
+    long timestamp(int pos) {
+        return buffer().getLong(offset(pos) + TIME);
+    }
+
+    /** Method to append a commit to this graph and force the record
+     *  to disk. Its parents must already be in the graph.
+     * @param commit The commit to be added */
+    void add(Commit commit) {
+        ObjectId id = commit.getId();
+        if (contains(id)) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        id.write(record);
+        record.putInt(commit.hasParent1()
+                ? indexOf(commit.getParent1Id()) : NONE);
+        record.putInt(commit.hasParent2()
+                ? indexOf(commit.getParent2Id()) : NONE);
+        record.putInt(commit.getGeneration());
+        record.putLong(commit.getTimestamp());
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(record.array());
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        positions.put(id, size);
+        size += 1;
+        buffer = null;
+    }
+
+    /** Method to check if one commit is an ancestor of (or the same
+     *  as) another. The walk never goes below the generation of the
+     *  possible ancestor, so it only visits the commits in between.
+     * @param ancestor The position of the possible ancestor
+     * @param descendant The position of the possible descendant
+     * @return Whether or not ancestor is reachable from descendant */
+    boolean isAncestor(int ancestor, int descendant) {
+        int minGen = generation(ancestor);
+        BitSet seen = new BitSet();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(descendant);
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == ancestor) {
+                return true;
+            }
+            if (seen.get(pos) || generation(pos) <= minGen) {
+                continue;
+            }
+            seen.set(pos);
+            for (int parent : parents(pos)) {
+                stack.push(parent);
+            }
+        }
+        return false;
+    }
+
+}
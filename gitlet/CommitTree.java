@@ -1,86 +1,131 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
 
 /** CommitTree class that stores all the commits in the .gitlet directory.
+ *  Only the ids of the commits are kept in the tree; the commits
+ *  themselves are read from the object store when they are needed.
+ *  Every node of a tree shares one index from commit id to node, so
+ *  finding a commit or appending a child to a known parent does not
+ *  have to walk the tree, and one sorted set of ids, so abbreviated
+ *  ids are resolved with a range lookup.
  * @author Brian Unggul */
-public class CommitTree implements Serializable {
+public class CommitTree {
 
-    /**The commit that will represent this committree's node. */
-    private Commit node;
+    /** The id of the commit that will represent this committree's node. */
+    private ObjectId node;
+
+    /** The store the commits of this committree are read from. */
+    private ObjectStore store;
 
     /** The hashmap of committrees, which are the children. */
-    private HashMap<String, CommitTree> children;
+    private HashMap<ObjectId, CommitTree> children;
+
+    /** The index from commit id to the node holding that commit,
+     *  shared by every node of the same tree. */
+    private HashMap<ObjectId, CommitTree> index;
+
+    /** The ids of every commit in this tree in sorted order, shared by
+     *  every node of the same tree. */
+    private TreeSet<ObjectId> sortedIDs;
 
     /** The constructor for this committree with the node as
-     *  the given commit, and the children initialized to an
+     *  the given commit id, and the children initialized to an
      *  empty hashmap.
-     * @param commit The commit that will become this committree's node
+     * @param id The id of the commit that will become this
+     *           committree's node
+     * @param objectStore The store the commit is read from
+     * @param nodes The index shared by the nodes of this tree
+     * @param ids The sorted ids shared by the nodes of this tree
      */
-    CommitTree(Commit commit) {
-        node = commit;
+    private CommitTree(ObjectId id, ObjectStore objectStore,
+                       HashMap<ObjectId, CommitTree> nodes,
+                       TreeSet<ObjectId> ids) {
+        node = id;
+        store = objectStore;
         children = new HashMap<>();
+        index = nodes;
+        sortedIDs = ids;
+        index.put(id, this);
+        sortedIDs.add(id);
     }
 
-    /** Method to add a new commit node to the specified branch
-     *  in this committree.
-     * @param commit The commit to be added to this committree
-     * @param branch The branch of this committree whose leaf the
-     *               commit is to be appended to.
-     * @return True or false whether or not a commit was added.
+    /** Method to build the committree from the edges recorded in
+     *  the specified store.
+     * @param objectStore The store to be read
+     * @return The committree rooted at the initial commit
      */
-    boolean addCommit(Commit commit, Commit branch) {
-        if (node.getSha1().compareTo(branch.getSha1()) == 0) {
-            children.put(commit.getSha1(), new CommitTree(commit));
-            return true;
-        } else {
-            for (CommitTree ct : children.values()) {
-                if (ct.addCommit(commit, branch)) {
-                    return true;
-                }
+    static CommitTree load(ObjectStore objectStore) {
+        HashMap<ObjectId, CommitTree> nodes = new HashMap<>();
+        TreeSet<ObjectId> sorted = new TreeSet<>();
+        CommitTree root = null;
+        for (String edge : objectStore.readEdges()) {
+            String[] ids = edge.split(" ");
+            CommitTree ct = getOrCreate(
+                    ObjectId.fromHex(ids[ids.length - 1]),
+                    objectStore, nodes, sorted);
+            if (ids.length == 1) {
+                root = ct;
+            } else {
+                getOrCreate(ObjectId.fromHex(ids[0]), objectStore, nodes,
+                        sorted).children.put(ct.node, ct);
             }
         }
-        return false;
+        return root;
     }
 
-    /** Method to add a committree to this committree.
-     * @param ct The committree to be added
-     * @param branch The branch in which the committree is to be
-     * added to
-     * @return Whether or not a committree was successfully added
+    /** Helper method for load() that gets the node of a commit id,
+     *  creating it if it is not in the index yet.
+     * @param id The commit id
+     * @param objectStore The store the commit is read from
+     * @param nodes The index of the tree being built
+     * @param sorted The sorted ids of the tree being built
+     * @return The node of the commit
      */
-    boolean addCommitTree(CommitTree ct, Commit branch) {
-        if (node.getSha1().compareTo(branch.getSha1()) == 0) {
-            String sha1 = ct.node.getSha1();
-            children.put(sha1, ct);
-            return true;
-        } else {
-            for (CommitTree child : children.values()) {
-                if (child.addCommitTree(ct, branch)) {
-                    return true;
-                }
-            }
+    private static CommitTree getOrCreate(ObjectId id,
+                                          ObjectStore objectStore,
+                                          HashMap<ObjectId, CommitTree> nodes,
+                                          TreeSet<ObjectId> sorted) {
+        CommitTree ct = nodes.get(id);
+        if (ct == null) {
+            ct = new CommitTree(id, objectStore, nodes, sorted);
         }
-        return false;
+        return ct;
     }
 
-    /** Method to find the committree whose node is equal to commit.
-     * @param commit The commit to be compared to
-     * @return The committree with the node similar to commit
+    /** Method to add a new commit to this committree as a child of
+     *  its parent1, which must already be in the tree.
+     * @param commit The commit to be added to this committree
+     * @return True or false whether or not a commit was added.
      */
-    CommitTree findCT(Commit commit) {
-        if (node.equals(commit)) {
-            return this;
-        }
-        for (CommitTree ct : children.values()) {
-            CommitTree foundCT = ct.findCT(commit);
-            if (foundCT != null) {
-                return foundCT;
-            }
+    boolean addCommit(Commit commit) {
+        CommitTree parent = index.get(commit.getParent1Id());
+        if (parent == null || index.containsKey(commit.getId())) {
+            return false;
         }
-        return null;
+        CommitTree ct = new CommitTree(commit.getId(), store, index,
+                sortedIDs);
+        parent.children.put(ct.node, ct);
+        return true;
+    }
+
+    /** Method to find the committree whose node is the commit with
+     *  the specified id.
+     * @param id The full commit id
+     * @return The committree of the commit, or null if there is none
+     */
+    CommitTree findCT(ObjectId id) {
+        return index.get(id);
+    }
+
+    /** Method to get the commit stored in this committree's node.
+     * @return The commit of this node */
+    private Commit getNode() {
+        return store.readCommit(node);
     }
 
     /** Method to check if this committree has any children
@@ -91,17 +136,36 @@ public class CommitTree implements Serializable {
         return children.size() > 0;
     }
 
+    /** Method to get every node of this committree, parents before
+     *  their children. The walk uses an explicit stack, so deep
+     *  histories cannot overflow the call stack.
+     * @return The list of nodes in this committree
+     */
+    private ArrayList<CommitTree> nodes() {
+        ArrayList<CommitTree> result = new ArrayList<>();
+        ArrayDeque<CommitTree> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            CommitTree ct = stack.pop();
+            result.add(ct);
+            for (CommitTree child : ct.children.values()) {
+                stack.push(child);
+            }
+        }
+        return result;
+    }
+
     /** Method to print out the commit info of all commits
      *  in this tree.
      */
     void globalLog() {
-        System.out.println("===");
-        System.out.println("commit " + node.getSha1());
-        System.out.println("Date: " + node.getDate());
-        System.out.println(node.getLogMessage());
-        System.out.println();
-        for (CommitTree ct : children.values()) {
-            ct.globalLog();
+        for (CommitTree ct : nodes()) {
+            Commit commit = ct.getNode();
+            System.out.println("===");
+            System.out.println("commit " + commit.getSha1());
+            System.out.println("Date: " + commit.getDate());
+            System.out.println(commit.getLogMessage());
+            System.out.println();
         }
     }
 
@@ -112,34 +176,57 @@ public class CommitTree implements Serializable {
      * @param found The arraylist of commits found so far
      * */
     void find(String message, ArrayList<String> found) {
-        if (node.getLogMessage().compareTo(message) == 0) {
-            System.out.println(node.getSha1());
-            found.add(node.getSha1());
-        }
-        for (CommitTree ct : children.values()) {
-            ct.find(message, found);
+        for (CommitTree ct : nodes()) {
+            if (ct.getNode().getLogMessage().compareTo(message) == 0) {
+                System.out.println(ct.node.name());
+                found.add(ct.node.name());
+            }
         }
     }
 
     /** Method to get the commit stored in this committree with
      *  the specified commit ID. Returns the Commit object if the
      *  commit with the commit ID exists; otherwise returns null.
+     *  Throws a GitletException if an abbreviated ID matches more
+     *  than one commit.
      * @param commitID The commit ID (can be the original commit
      *                 ID, or a prefix of the original commit ID
      * @return The commit with the commit ID; otherwise returns null
      */
     Commit findCommit(String commitID) {
-        if (node.getSha1().startsWith(commitID)) {
-            return node;
-        } else if (hasChildren()) {
-            for (CommitTree ct : children.values()) {
-                Commit cmt = ct.findCommit(commitID);
-                if (cmt != null) {
-                    return cmt;
-                }
+        if (ObjectId.isId(commitID)) {
+            CommitTree ct = index.get(ObjectId.fromHex(commitID));
+            return ct == null ? null : ct.getNode();
+        }
+        List<ObjectId> matches = findIDs(commitID, 2);
+        if (matches.size() > 1) {
+            throw Utils.error("Commit id %s is ambiguous.", commitID);
+        }
+        return matches.isEmpty() ? null : index.get(matches.get(0)).getNode();
+    }
+
+    /** Method to get the ids of the commits in this committree that
+     *  start with the specified prefix, in sorted order. The lookup
+     *  starts at the smallest id with that prefix, so it takes
+     *  O(log n + k) time for k results.
+     * @param prefix The prefix of the commit ids, in hexadecimal
+     * @param limit The largest number of ids to be returned
+     * @return The list of matching ids
+     */
+    List<ObjectId> findIDs(String prefix, int limit) {
+        ArrayList<ObjectId> matches = new ArrayList<>();
+        String lowest = prefix + "0".repeat(
+                Math.max(0, Utils.UID_LENGTH - prefix.length()));
+        if (!ObjectId.isId(lowest)) {
+            return matches;
+        }
+        for (ObjectId id : sortedIDs.tailSet(ObjectId.fromHex(lowest))) {
+            if (!id.name().startsWith(prefix) || matches.size() == limit) {
+                break;
             }
+            matches.add(id);
         }
-        return null;
+        return matches;
     }
 
     /** Method to check if a file with the specified file name
@@ -148,18 +235,11 @@ public class CommitTree implements Serializable {
      * @return True or false whether or not the file is tracked
      */
     boolean fileTracked(String fileName) {
-        for (String name : node.getBlobs().keySet()) {
-            if (fileName.compareTo(name) == 0) {
+        for (CommitTree ct : index.values()) {
+            if (ct.getNode().blobExists(fileName)) {
                 return true;
             }
         }
-        if (hasChildren()) {
-            for (CommitTree ct : children.values()) {
-                if (ct.fileTracked(fileName)) {
-                    return true;
-                }
-            }
-        }
         return false;
     }
 
@@ -0,0 +1,522 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Diff class that finds the lines two versions of a file have in
+ *  common, and shows the difference as a unified diff. The lines are
+ *  first numbered so that equal lines get equal numbers, and every
+ *  comparison after that is a comparison of two ints. The common
+ *  lines at either end of a range are matched straight away. What is
+ *  left is cut with the histogram heuristic: the longest run of
+ *  common lines around the line of the old range that occurs the
+ *  fewest times is matched, and the ranges on either side of it are
+ *  done the same way. That keeps lines such as blank lines and lone
+ *  braces from being matched across unrelated changes, and is close
+ *  to linear on real files. A range whose common lines all occur too
+ *  often for that falls back to Myers' O(ND) algorithm in its
+ *  linear-space form, which splits the range at the middle of a
+ *  shortest edit script, found by searching from both ends at once.
+ *  @author Brian Unggul
+ */
+class Diff {
+
+    /** The number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** The edit that keeps a line. */
+    private static final int KEEP = 0;
+
+    /** The edit that deletes a line of the old file. */
+    private static final int DELETE = 1;
+
+    /** The edit that inserts a line of the new file. */
+    private static final int INSERT = 2;
+
+    /** Method to split the contents of a file into lines. Every line
+     *  keeps its line terminator, so joining the lines gives back the
+     *  contents, and the bytes are read as ISO-8859-1 so that each
+     *  byte is one char whatever the encoding of the file.
+     * @param data The contents
+     * @return The lines */
+    static String[] lines(byte[] data) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i += 1) {
+            if (data[i] == '\n') {
+                lines.add(new String(data, start, i + 1 - start,
+                        StandardCharsets.ISO_8859_1));
+                start = i + 1;
+            }
+        }
+        if (start < data.length) {
+            lines.add(new String(data, start, data.length - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /** Method to number the lines of some files, giving equal lines
+     *  the same number in all of them.
+     * @param texts The lines of each file
+     * @return The numbers of the lines of each file */
+    static int[][] number(String[]... texts) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t += 1) {
+            result[t] = new int[texts[t].length];
+            for (int i = 0; i < texts[t].length; i += 1) {
+                Integer num = numbers.putIfAbsent(texts[t][i],
+                        numbers.size());
+                result[t][i] = num == null ? numbers.size() - 1 : num;
+            }
+        }
+        return result;
+    }
+
+    /** Method to match the lines of A with the lines of B. Matches
+     *  never cross: if line i of A matches line j of B, every later
+     *  matched line of A matches a line after j.
+     * @param a The numbered lines of the old file
+     * @param b The numbered lines of the new file
+     * @return The line of B that each line of A matches, or -1 for a
+     * line that was deleted */
+    static int[] match(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+        int size = 0;
+        for (int num : a) {
+            size = Math.max(size, num + 1);
+        }
+        for (int num : b) {
+            size = Math.max(size, num + 1);
+        }
+        int[] count = new int[size];
+        int[] last = new int[size];
+        Arrays.fill(last, -1);
+        int[] previous = new int[a.length];
+        new Histogram(a, b, match, count, last, previous)
+                .match(0, a.length, 0, b.length);
+        return match;
+    }
+
+    /** Method to match the lines of A with the lines of B along a
+     *  shortest edit script, using Myers' algorithm alone.
+     * @param a The numbered lines of the old file
+     * @param b The numbered lines of the new file
+     * @return The line of B that each line of A matches, or -1 for a
+     * line that was deleted */
+    static int[] myers(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+        myers(a, 0, a.length, b, 0, b.length, match);
+        return match;
+    }
+
+    /** Helper method for myers() that matches the lines from ALO up
+     *  to AHI with the lines from BLO up to BHI.
+     * @param a The numbered lines of the old file
+     * @param aLo The first line of A in the range
+     * @param aHi The end of the range in A
+     * @param b The numbered lines of the new file
+     * @param bLo The first line of B in the range
+     * @param bHi The end of the range in B
+     * @param match The matches found so far */
+    private static void myers(int[] a, int aLo, int aHi, int[] b,
+                              int bLo, int bHi, int[] match) {
+        while (true) {
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                match[aLo] = bLo;
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+                match[aHi] = bHi;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                return;
+            }
+            int[] split = split(a, aLo, aHi, b, bLo, bHi);
+            if (split == null) {
+                return;
+            }
+            myers(a, aLo, split[0], b, bLo, split[1], match);
+            aLo = split[0];
+            bLo = split[1];
+        }
+    }
+
+    /** The histogram heuristic, over one pair of files. */
+    private static class Histogram {
+
+        /** The most times a line may occur in a range of the old file
+         *  and still be used to cut the range. */
+        private static final int MAX_COUNT = 64;
+
+        /** The numbered lines of the old file. */
+        private final int[] a;
+
+        /** The numbered lines of the new file. */
+        private final int[] b;
+
+        /** The matches found so far. */
+        private final int[] match;
+
+        /** The number of times each line occurs in the range of A
+         *  being cut; zero outside of cut(). */
+        private final int[] count;
+
+        /** The last position of each line in the range of A being
+         *  cut; -1 outside of cut(). */
+        private final int[] last;
+
+        /** The position of the previous occurrence of the line at each
+         *  position of A, or -1 if it is the first one in the range. */
+        private final int[] previous;
+
+        /** The first line of A in the best run found by cut(). */
+        private int runA;
+
+        /** The first line of B in the best run found by cut(). */
+        private int runB;
+
+        /** The length of the best run found by cut(). */
+        private int runLength;
+
+        /** Constructor for the heuristic over A and B.
+         * @param a The numbered lines of the old file
+         * @param b The numbered lines of the new file
+         * @param match The matches, all -1
+         * @param count An array of zeros, one per line number
+         * @param last An array of -1s, one per line number
+         * @param previous An array the size of A */
+        Histogram(int[] a, int[] b, int[] match, int[] count, int[] last,
+                  int[] previous) {
+            this.a = a;
+            this.b = b;
+            this.match = match;
+            this.count = count;
+            this.last = last;
+            this.previous = previous;
+        }
+
+        /** Method to match the lines from ALO up to AHI with the lines
+         *  from BLO up to BHI.
+         * @param aLo The first line of A in the range
+         * @param aHi The end of the range in A
+         * @param bLo The first line of B in the range
+         * @param bHi The end of the range in B */
+        void match(int aLo, int aHi, int bLo, int bHi) {
+            while (true) {
+                while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                    match[aLo] = bLo;
+                    aLo += 1;
+                    bLo += 1;
+                }
+                while (aLo < aHi && bLo < bHi
+                        && a[aHi - 1] == b[bHi - 1]) {
+                    aHi -= 1;
+                    bHi -= 1;
+                    match[aHi] = bHi;
+                }
+                if (aLo == aHi || bLo == bHi) {
+                    return;
+                }
+                int common = cut(aLo, aHi, bLo, bHi);
+                if (runLength == 0) {
+                    if (common > 0) {
+                        myers(a, aLo, aHi, b, bLo, bHi, match);
+                    }
+                    return;
+                }
+                int startA = runA;
+                int startB = runB;
+                int length = runLength;
+                for (int k = 0; k < length; k += 1) {
+                    match[startA + k] = startB + k;
+                }
+                match(aLo, startA, bLo, startB);
+                aLo = startA + length;
+                bLo = startB + length;
+            }
+        }
+
+        /** Helper method for match() that finds the run of common
+         *  lines to cut a range at: the longest of the runs around
+         *  the line of B whose count in the range of A is lowest.
+         *  The run is left in runA, runB and runLength, with a length
+         *  of zero if there is none.
+         * @param aLo The first line of A in the range
+         * @param aHi The end of the range in A
+         * @param bLo The first line of B in the range
+         * @param bHi The end of the range in B
+         * @return The number of lines of B that are also in A */
+        private int cut(int aLo, int aHi, int bLo, int bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                previous[i] = last[a[i]];
+                last[a[i]] = i;
+                count[a[i]] += 1;
+            }
+            runLength = 0;
+            int best = MAX_COUNT + 1;
+            int common = 0;
+            for (int j = bLo; j < bHi;) {
+                int num = b[j];
+                int next = j + 1;
+                if (count[num] > 0) {
+                    common += 1;
+                }
+                if (count[num] > 0 && count[num] <= best) {
+                    for (int i = last[num]; i >= 0; i = previous[i]) {
+                        int s = i;
+                        int t = j;
+                        while (s > aLo && t > bLo && a[s - 1] == b[t - 1]) {
+                            s -= 1;
+                            t -= 1;
+                        }
+                        int e = i + 1;
+                        int f = j + 1;
+                        while (e < aHi && f < bHi && a[e] == b[f]) {
+                            e += 1;
+                            f += 1;
+                        }
+                        if (count[num] < best || e - s > runLength) {
+                            best = count[num];
+                            runA = s;
+                            runB = t;
+                            runLength = e - s;
+                        }
+                        next = Math.max(next, f);
+                    }
+                }
+                j = next;
+            }
+            for (int i = aLo; i < aHi; i += 1) {
+                last[a[i]] = -1;
+                count[a[i]] = 0;
+            }
+            return common;
+        }
+    }
+
+    /** Helper method for myers() that finds a point in the middle of
+     *  a shortest edit script from the range of A to the range of B,
+     *  where the paths searched from its start and from its end meet.
+     *  Neither range may be empty, nor may they start or end with the
+     *  same line.
+     * @param a The numbered lines of the old file
+     * @param aLo The first line of A in the range
+     * @param aHi The end of the range in A
+     * @param b The numbered lines of the new file
+     * @param bLo The first line of B in the range
+     * @param bHi The end of the range in B
+     * @return The line of A and the line of B at the point, or null if
+     * the ranges have no line in common */
+    private static int[] split(int[] a, int aLo, int aHi, int[] b,
+                               int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int fStart = 0;
+        int fEnd = 0;
+        int bStart = 0;
+        int bEnd = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                int at = offset + k;
+                int x;
+                if (k == -d || (k != d && forward[at - 1] < forward[at + 1])) {
+                    x = forward[at + 1];
+                } else {
+                    x = forward[at - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[at] = x;
+                if (x > n) {
+                    fEnd += 2;
+                } else if (y > m) {
+                    fStart += 2;
+                } else if (odd) {
+                    int back = offset + delta - k;
+                    if (back >= 0 && back < length && backward[back] != -1
+                            && x >= n - backward[back]) {
+                        return new int[] {aLo + x, bLo + y};
+                    }
+                }
+            }
+            for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                int at = offset + k;
+                int x;
+                if (k == -d
+                        || (k != d && backward[at - 1] < backward[at + 1])) {
+                    x = backward[at + 1];
+                } else {
+                    x = backward[at - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m
+                        && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[at] = x;
+                if (x > n) {
+                    bEnd += 2;
+                } else if (y > m) {
+                    bStart += 2;
+                } else if (!odd) {
+                    int front = offset + delta - k;
+                    if (front >= 0 && front < length && forward[front] != -1
+                            && forward[front] >= n - x) {
+                        int fx = forward[front];
+                        int fy = fx - (front - offset);
+                        return new int[] {aLo + fx, bLo + fy};
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Method to show the difference between two versions of a file
+     *  as a unified diff, with CONTEXT unchanged lines around each
+     *  change. The result is in the one-char-per-byte form of lines(),
+     *  so its bytes are taken back with ISO-8859-1. Versions that are
+     *  not text are only reported as different.
+     * @param name The path of the file
+     * @param oldData The old contents, or null if the file was added
+     * @param newData The new contents, or null if the file was removed
+     * @return The diff, or an empty string if the versions are equal */
+    static String unified(String name, byte[] oldData, byte[] newData) {
+        if (Arrays.equals(oldData, newData)) {
+            return "";
+        }
+        String path = new String(name.getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.ISO_8859_1);
+        String oldName = oldData == null ? "/dev/null" : "a/" + path;
+        String newName = newData == null ? "/dev/null" : "b/" + path;
+        StringBuilder out = new StringBuilder();
+        out.append("diff --git a/").append(path).append(" b/").append(path)
+                .append('\n');
+        byte[] before = oldData == null ? new byte[0] : oldData;
+        byte[] after = newData == null ? new byte[0] : newData;
+        if (Diff3.isBinary(before) || Diff3.isBinary(after)) {
+            out.append("Binary files ").append(oldName).append(" and ")
+                    .append(newName).append(" differ\n");
+            return out.toString();
+        }
+        out.append("--- ").append(oldName).append('\n');
+        out.append("+++ ").append(newName).append('\n');
+        String[] a = lines(before);
+        String[] b = lines(after);
+        int[][] numbers = number(a, b);
+        hunks(a, b, match(numbers[0], numbers[1]), out);
+        return out.toString();
+    }
+
+    /** Helper method for unified() that writes the hunks of a diff.
+     * @param a The lines of the old version
+     * @param b The lines of the new version
+     * @param match The line of B that each line of A matches
+     * @param out The diff so far */
+    private static void hunks(String[] a, String[] b, int[] match,
+                              StringBuilder out) {
+        int n = 0;
+        int[] kind = new int[a.length + b.length];
+        int[] posA = new int[kind.length];
+        int[] posB = new int[kind.length];
+        int i = 0;
+        int j = 0;
+        for (; i < a.length || j < b.length; n += 1) {
+            posA[n] = i;
+            posB[n] = j;
+            if (i < a.length && match[i] < 0) {
+                kind[n] = DELETE;
+                i += 1;
+            } else if (j < b.length && (i == a.length || j < match[i])) {
+                kind[n] = INSERT;
+                j += 1;
+            } else {
+                kind[n] = KEEP;
+                i += 1;
+                j += 1;
+            }
+        }
+        for (int k = 0; k < n;) {
+            if (kind[k] == KEEP) {
+                k += 1;
+                continue;
+            }
+            int start = Math.max(0, k - CONTEXT);
+            int last = k;
+            for (int m = k + 1; m < n && m - last <= 2 * CONTEXT + 1;
+                 m += 1) {
+                if (kind[m] != KEEP) {
+                    last = m;
+                }
+            }
+            int end = Math.min(n, last + CONTEXT + 1);
+            int countA = 0;
+            int countB = 0;
+            for (int m = start; m < end; m += 1) {
+                countA += kind[m] == INSERT ? 0 : 1;
+                countB += kind[m] == DELETE ? 0 : 1;
+            }
+            out.append("@@ -").append(range(posA[start], countA))
+                    .append(" +").append(range(posB[start], countB))
+                    .append(" @@\n");
+            for (int m = start; m < end; m += 1) {
+                if (kind[m] == INSERT) {
+                    line(out, '+', b[posB[m]]);
+                } else {
+                    line(out, kind[m] == DELETE ? '-' : ' ', a[posA[m]]);
+                }
+            }
+            k = end;
+        }
+    }
+
+    /** Helper method for hunks() that gets the range of lines of a
+     *  hunk as its header shows it.
+     * @param start The number of lines before the hunk
+     * @param count The number of lines in the hunk
+     * @return The range */
+    private static String range(int start, int count) {
+        if (count == 0) {
+            return start + ",0";
+        } else if (count == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (start + 1) + "," + count;
+    }
+
+    /** Helper method for hunks() that writes one line of a hunk.
+     * @param out The diff so far
+     * @param edit The character showing how the line was changed
+     * @param line The line */
+    private static void line(StringBuilder out, char edit, String line) {
+        out.append(edit).append(line);
+        if (!line.endsWith("\n")) {
+            out.append("\n\\ No newline at end of file\n");
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Diff3 class that merges two versions of a file that both changed
+ *  since their split point, a line at a time. Both versions are
+ *  diffed against the split point, and the lines of the split point
+ *  that are kept by both versions cut the files into stable lines and
+ *  changed chunks. A chunk that only one side changed takes that
+ *  side's lines, a chunk both sides changed the same way takes either,
+ *  and only a chunk both sides changed differently is written between
+ *  conflict markers. A marker always starts a line of its own, even
+ *  after a side whose last line has no line terminator. Files holding
+ *  a NUL byte are not text, so they are not merged by line and
+ *  conflict as a whole.
+ *  @author Brian Unggul
+ */
+class Diff3 {
+
+    /** The marker before the current branch's side of a conflict. */
+    static final String OURS = "<<<<<<< HEAD";
+
+    /** The marker between the two sides of a conflict. */
+    static final String SEPARATOR = "=======";
+
+    /** The marker after the given branch's side of a conflict. */
+    static final String THEIRS = ">>>>>>>";
+
+    /** The number of bytes at the start of a file that are checked for
+     *  a NUL byte. */
+    private static final int BINARY_CHECK = 8000;
+
+    /** The lines of the split point. */
+    private final String[] base;
+
+    /** The lines of the current branch's version. */
+    private final String[] ours;
+
+    /** The lines of the given branch's version. */
+    private final String[] theirs;
+
+    /** The numbers of the lines of the split point, the current
+     *  version and the given version. */
+    private final int[][] numbers;
+
+    /** Whether or not the merged contents written so far end with a
+     *  line terminator, or nothing has been written yet. */
+    private boolean lineStart = true;
+
+    /** Constructor for a merge of three versions of a file.
+     * @param baseData The contents at the split point
+     * @param oursData The contents in the current branch
+     * @param theirsData The contents in the given branch */
+    private Diff3(byte[] baseData, byte[] oursData, byte[] theirsData) {
+        base = Diff.lines(baseData);
+        ours = Diff.lines(oursData);
+        theirs = Diff.lines(theirsData);
+        numbers = Diff.number(base, ours, theirs);
+    }
+
+    /** Method to merge two versions of a file and write the result.
+     * @param baseData The contents at the split point
+     * @param oursData The contents in the current branch
+     * @param theirsData The contents in the given branch
+     * @param out The stream the merged contents are written to
+     * @return Whether or not the merge has a conflict */
+    static boolean merge(byte[] baseData, byte[] oursData,
+                         byte[] theirsData, OutputStream out)
+            throws IOException {
+        if (isBinary(baseData) || isBinary(oursData)
+                || isBinary(theirsData)) {
+            conflict(out, oursData, theirsData);
+            return true;
+        }
+        return new Diff3(baseData, oursData, theirsData).merge(out);
+    }
+
+    /** Method to write two versions of a file as one conflict.
+     * @param out The stream the conflict is written to
+     * @param oursData The contents in the current branch (empty if the
+     * file is absent there)
+     * @param theirsData The contents in the given branch (empty if the
+     * file is absent there) */
+    static void conflict(OutputStream out, byte[] oursData,
+                         byte[] theirsData) throws IOException {
+        marker(out, OURS, true);
+        out.write(oursData);
+        marker(out, SEPARATOR, endsLine(oursData));
+        out.write(theirsData);
+        marker(out, THEIRS, endsLine(theirsData));
+    }
+
+    /** Helper method for merge() that merges the three versions.
+     * @param out The stream the merged contents are written to
+     * @return Whether or not the merge has a conflict */
+    private boolean merge(OutputStream out) throws IOException {
+        int[] toOurs = Diff.match(numbers[0], numbers[1]);
+        int[] toTheirs = Diff.match(numbers[0], numbers[2]);
+        boolean conflict = false;
+        int i = 0;
+        int a = 0;
+        int b = 0;
+        while (true) {
+            while (i < base.length && toOurs[i] == a && toTheirs[i] == b) {
+                write(out, base, i, i + 1);
+                i += 1;
+                a += 1;
+                b += 1;
+            }
+            if (i == base.length && a == ours.length && b == theirs.length) {
+                return conflict;
+            }
+            int j = i;
+            while (j < base.length && (toOurs[j] < 0 || toTheirs[j] < 0)) {
+                j += 1;
+            }
+            int aEnd = j < base.length ? toOurs[j] : ours.length;
+            int bEnd = j < base.length ? toTheirs[j] : theirs.length;
+            if (same(0, i, j, 1, a, aEnd)) {
+                write(out, theirs, b, bEnd);
+            } else if (same(0, i, j, 2, b, bEnd)
+                    || same(1, a, aEnd, 2, b, bEnd)) {
+                write(out, ours, a, aEnd);
+            } else {
+                marker(out, OURS);
+                write(out, ours, a, aEnd);
+                marker(out, SEPARATOR);
+                write(out, theirs, b, bEnd);
+                marker(out, THEIRS);
+                conflict = true;
+            }
+            i = j;
+            a = aEnd;
+            b = bEnd;
+        }
+    }
+
+    /** Helper method for merge() that checks if two runs of lines are
+     *  the same.
+     * @param x The version of the first run
+     * @param xLo The first line of the first run
+     * @param xHi The end of the first run
+     * @param y The version of the second run
+     * @param yLo The first line of the second run
+     * @param yHi The end of the second run
+     * @return Whether or not the runs hold the same lines */
+    private boolean same(int x, int xLo, int xHi, int y, int yLo, int yHi) {
+        if (xHi - xLo != yHi - yLo) {
+            return false;
+        }
+        for (int k = 0; k < xHi - xLo; k += 1) {
+            if (numbers[x][xLo + k] != numbers[y][yLo + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Helper method for merge() that writes a run of lines.
+     * @param out The stream the lines are written to
+     * @param lines The lines of a version
+     * @param start The first line of the run
+     * @param end The end of the run */
+    private void write(OutputStream out, String[] lines, int start,
+                       int end) throws IOException {
+        for (int k = start; k < end; k += 1) {
+            out.write(lines[k].getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if (end > start) {
+            lineStart = lines[end - 1].endsWith("\n");
+        }
+    }
+
+    /** Helper method for merge() that writes a conflict marker on a
+     *  line of its own after the merged contents written so far.
+     * @param out The stream the marker is written to
+     * @param marker The marker */
+    private void marker(OutputStream out, String marker)
+            throws IOException {
+        marker(out, marker, lineStart);
+        lineStart = true;
+    }
+
+    /** Method to write a conflict marker on a line of its own, ending
+     *  the line before it first if it has no line terminator.
+     * @param out The stream the marker is written to
+     * @param marker The marker
+     * @param lineStart Whether or not the contents written before the
+     * marker end with a line terminator */
+    private static void marker(OutputStream out, String marker,
+                               boolean lineStart) throws IOException {
+        String sep = System.lineSeparator();
+        out.write(((lineStart ? "" : sep) + marker + sep)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Method to check if some contents end with a line terminator.
+     * @param data The contents
+     * @return Whether or not they are empty or end with a newline */
+    private static boolean endsLine(byte[] data) {
+        return data.length == 0 || data[data.length - 1] == '\n';
+    }
+
+    /** Method to check if the contents of a file are binary rather
+     *  than text, the way Git does: by looking for a NUL byte near the
+     *  start.
+     * @param data The contents
+     * @return Whether or not there is a NUL byte */
+    static boolean isBinary(byte[] data) {
+        int end = Math.min(data.length, BINARY_CHECK);
+        for (int k = 0; k < end; k += 1) {
+            if (data[k] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -1,24 +1,54 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /** Gitlet class that parses the commands and executes them.
  * @author Brian Unggul
  */
-public class Gitlet implements Serializable {
+public class Gitlet {
 
-    /** The committree pointed to by this Gitlet object. */
+    /** The magic number of the encoded staging state ("GSTA"). */
+    private static final int MAGIC = 0x47535441;
+
+    /** The version of the encoding of the staging state. */
+    private static final int VERSION = 1;
+
+    /** The pool of the last call of runParallel() that asked for fewer
+     * threads than there are processors. */
+    private static ForkJoinPool pool;
+
+    /** The store that holds the commits and branches of this
+     * Gitlet object. Only the staging state below is kept in
+     * .gitlet/data; everything else is read from the store. */
+    private ObjectStore store;
+
+    /** The committree pointed to by this Gitlet object, which is
+     * only built when a command needs it. */
     private CommitTree commitTree;
 
-    /** The hashmap of branches (commits) pointed to by this
-     * Gitlet object. */
-    private HashMap<String, Commit> branches;
+    /** The cache of the stat data and sha1s of the working files,
+     * which is only read when a command needs it. */
+    private StatCache statCache;
+
+    /** The similarity signatures of blobs, which are only read when a
+     * merge needs them. */
+    private SimilarityIndex similarityIndex;
 
     /** The name of the current branch pointed to by this
      * Gitlet object. */
@@ -44,12 +74,181 @@ public class Gitlet implements Serializable {
      * stores the name and the path of the remotes. */
     private HashMap<String, String> remotes;
 
+    /** The id of the current commit when the staging state was last
+     * saved. The staging state only belongs to that commit. */
+    private ObjectId base;
+
+    /** The staging state as it was last read or written, so that it
+     * is only written again when a command changed it. */
+    private byte[] savedState;
+
+    /** Method to read the Gitlet object of the repository in the
+     * specified .gitlet directory. A ref update cut short by a crash
+     * is finished first. If the current commit is no longer the one
+     * the staging state was saved on, because a crash came between a
+     * commit and the saving of its cleared staging state, the stage
+     * is cleared.
+     * @param gitletDir The .gitlet directory
+     * @return The Gitlet object */
+    static Gitlet load(File gitletDir) {
+        ObjectStore store = new ObjectStore(gitletDir);
+        Utils.setHashAlgorithm(store.hashAlgorithm());
+        store.recover();
+        byte[] state = Utils.readContents(Utils.join(gitletDir, "data"));
+        Gitlet gitlet = decode(state);
+        gitlet.savedState = state;
+        gitlet.store = store;
+        gitlet.currBranchName = store.readHead();
+        gitlet.currBranch = store.readRefCommit(gitlet.currBranchName);
+        if (gitlet.base != null
+                && !gitlet.base.equals(gitlet.currBranch.getId())) {
+            gitlet.clearStage();
+            gitlet.nextRem = new ArrayList<>();
+        }
+        return gitlet;
+    }
+
+    /** Method to write the staging state of this Gitlet object
+     * back to .gitlet/data, if it changed. The file is replaced in a
+     * single rename, so a crash leaves either the old state or the
+     * new one. Commits and branches are already written to the store
+     * by the commands that create them. */
+    void save() {
+        if (store == null) {
+            return;
+        }
+        base = currBranch.getId();
+        byte[] state = encode();
+        if (!Arrays.equals(state, savedState)) {
+            Utils.writeAtomically(Utils.join(store.getDir(), "data"),
+                    state);
+            savedState = state;
+        }
+        if (statCache != null) {
+            statCache.save(Utils.join(store.getDir(), "index"));
+        }
+        if (similarityIndex != null) {
+            similarityIndex.save(Utils.join(store.getDir(), "similarity"));
+        }
+    }
+
+    /** Method to encode the staging state in the format of Codec: the
+     * commit it belongs to, the staged blobs, the names of the removed
+     * files, the removed blobs and the remotes.
+     * @return The encoded staging state */
+    private byte[] encode() {
+        Codec.Output out = new Codec.Output(MAGIC, VERSION);
+        out.bool(base != null);
+        if (base != null) {
+            out.id(base);
+        }
+        out.varint(stageBlobs.size());
+        for (Blob blob : stageBlobs) {
+            blob.encode(out);
+        }
+        out.varint(nextRem.size());
+        for (String name : nextRem) {
+            out.string(name);
+        }
+        out.varint(removed.size());
+        for (Map.Entry<String, Blob> entry : removed.entrySet()) {
+            out.string(entry.getKey());
+            entry.getValue().encode(out);
+        }
+        out.varint(remotes.size());
+        for (Map.Entry<String, String> entry : remotes.entrySet()) {
+            out.string(entry.getKey());
+            out.string(entry.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /** Method to read the staging state written by encode().
+     * @param data The encoded staging state
+     * @return A Gitlet object holding the staging state */
+    private static Gitlet decode(byte[] data) {
+        Codec.Input in = new Codec.Input(data, MAGIC, VERSION);
+        Gitlet gitlet = new Gitlet();
+        gitlet.base = in.bool() ? in.id() : null;
+        gitlet.stageBlobs = new ArrayList<>();
+        for (int i = in.count(); i > 0; i -= 1) {
+            gitlet.stageBlobs.add(Blob.decode(in));
+        }
+        gitlet.nextRem = new ArrayList<>();
+        for (int i = in.count(); i > 0; i -= 1) {
+            gitlet.nextRem.add(in.string());
+        }
+        gitlet.removed = new HashMap<>();
+        for (int i = in.count(); i > 0; i -= 1) {
+            gitlet.removed.put(in.string(), Blob.decode(in));
+        }
+        gitlet.remotes = new HashMap<>();
+        for (int i = in.count(); i > 0; i -= 1) {
+            gitlet.remotes.put(in.string(), in.string());
+        }
+        in.end();
+        return gitlet;
+    }
+
+    /** Method to get the sha1 of a working file, which is only read
+     * and hashed if it changed since it was last hashed.
+     * @param file The working file
+     * @return The sha1 of the file */
+    String hashFile(File file) {
+        return statCache().hash(file);
+    }
+
+    /** Method to get the similarity index, reading it the first time
+     * it is asked for.
+     * @return The similarity index */
+    private SimilarityIndex similarityIndex() {
+        if (similarityIndex == null) {
+            similarityIndex = SimilarityIndex.load(
+                    Utils.join(store.getDir(), "similarity"));
+        }
+        return similarityIndex;
+    }
+
+    /** Method to get the stat cache, reading it the first time it is
+     * asked for.
+     * @return The stat cache */
+    private StatCache statCache() {
+        if (statCache == null) {
+            statCache = StatCache.load(Utils.join(store.getDir(), "index"));
+        }
+        return statCache;
+    }
+
+    /** Method to get the committree, building it from the store
+     * the first time it is asked for.
+     * @return The committree */
+    CommitTree getCommitTree() {
+        if (commitTree == null) {
+            commitTree = CommitTree.load(store);
+        }
+        return commitTree;
+    }
+
+    /** Method to get the commit with the specified id. A complete id
+     * is read straight from the store; an abbreviated one is looked
+     * up in the committree.
+     * @param commitID The commit id, or a prefix of it
+     * @return The commit, or null if there is none */
+    Commit findCommit(String commitID) {
+        if (commitID.length() == Utils.UID_LENGTH) {
+            return store.readCommit(commitID);
+        }
+        return getCommitTree().findCommit(commitID);
+    }
 
     /** Method to parse the commands and run the commands.
      * @param args The arguments given by the person */
     void process(String... args) throws IOException {
         if (args[0].compareTo("add") == 0) {
-            if (args.length != 2) {
+            if (args.length == 3 && args[1].compareTo("-A") == 0
+                    && args[2].startsWith("--jobs=")) {
+                addAll(parseJobs(args[2]));
+            } else if (args.length != 2) {
                 System.out.println("Incorrect operands.");
             } else {
                 add(args[1]);
@@ -107,6 +306,18 @@ public class Gitlet implements Serializable {
         }
     }
 
+    /** Method to read the number of threads from a --jobs=N option.
+     * @param option The option
+     * @return The number of threads, which is at least 1 */
+    static int parseJobs(String option) {
+        try {
+            return Math.max(1, Integer.parseInt(
+                    option.substring(option.indexOf('=') + 1)));
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
     /** Helper method to continue the original process() method;
      * this is literally just to make the stylechecker happy.
      * @param args The arguments from the user
@@ -167,23 +378,171 @@ public class Gitlet implements Serializable {
             } else {
                 pull(args[1], args[2]);
             }
+        } else if (args[0].compareTo("diff") == 0) {
+            if (args.length == 1) {
+                diffWorking();
+            } else if (args.length == 2
+                    && args[1].compareTo("--staged") == 0) {
+                diffStaged();
+            } else if (args.length == 3) {
+                diffCommits(args[1], args[2]);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+        } else if (args[0].compareTo("gc") == 0) {
+            if (args.length > 1) {
+                System.out.println("Incorrect operands.");
+            } else {
+                store.repack();
+            }
         } else {
             System.out.println("No command with that name exists.");
         }
     }
 
-    /** The init command. */
-    void init() throws IOException {
+    /** The diff command with no operands, which shows the changes in
+     * the working directory that are not staged yet: each tracked
+     * file is compared with its staged version, or with its version
+     * in the current commit if it is not staged. Untracked files are
+     * left out. */
+    void diffWorking() throws IOException {
+        ArrayList<String[]> changes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : stagedFiles().entrySet()) {
+            String name = entry.getKey();
+            File file = new File(name);
+            if (!file.isFile()) {
+                changes.add(new String[] {name, entry.getValue(), null});
+            } else {
+                String sha1 = hashFile(file);
+                if (sha1.compareTo(entry.getValue()) != 0) {
+                    changes.add(new String[] {name, entry.getValue(), sha1});
+                }
+            }
+        }
+        printDiffs(changes, true);
+    }
+
+    /** The diff --staged command, which shows the changes staged for
+     * the next commit: the tree of the current commit is diffed with
+     * the tree the next commit would have. */
+    void diffStaged() throws IOException {
+        Tree head = currBranch.getTree();
+        printDiffs(changes(head, Commit.apply(head, stageBlobs, nextRem)),
+                false);
+    }
+
+    /** The diff command with two commits, which shows the changes from
+     * the first commit to the second.
+     * @param fromID The (possibly abbreviated) id of the first commit
+     * @param toID The (possibly abbreviated) id of the second commit */
+    void diffCommits(String fromID, String toID) throws IOException {
+        Commit from = findCommit(fromID);
+        Commit to = findCommit(toID);
+        if (from == null || to == null) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        printDiffs(changes(from.getTree(), to.getTree()), false);
+    }
+
+    /** Helper method for the diff commands that lists the files that
+     * differ between two trees, skipping unchanged directories by id.
+     * @param one The old tree
+     * @param two The new tree
+     * @return The name, old sha1 and new sha1 of each changed file */
+    private static List<String[]> changes(Tree one, Tree two) {
+        ArrayList<String[]> changes = new ArrayList<>();
+        for (Map.Entry<String, String[]> entry
+                : Tree.diff(one, two).entrySet()) {
+            changes.add(new String[] {entry.getKey(),
+                entry.getValue()[0], entry.getValue()[1]});
+        }
+        return changes;
+    }
+
+    /** Method to get the files the next commit would hold: those of
+     * the current commit, without the removed files and with the
+     * staged ones.
+     * @return The sha1 of each file, by name */
+    TreeMap<String, String> stagedFiles() {
+        TreeMap<String, String> files = currBranch.getTree().entries();
+        for (String name : nextRem) {
+            files.remove(name);
+        }
+        for (Blob blob : stageBlobs) {
+            files.put(blob.getFileName(), blob.getFileSha1());
+        }
+        return files;
+    }
+
+    /** Helper method for the diff commands that diffs changed files
+     * and prints the diffs in order. The files are read and diffed by
+     * as many threads as there are processors, since each pair of
+     * versions is diffed on its own.
+     * @param changes The name, old sha1 and new sha1 of each changed
+     * file, where a null sha1 means the file is absent
+     * @param working Whether or not the new versions are the working
+     * files rather than blobs */
+    private void printDiffs(List<String[]> changes, boolean working)
+            throws IOException {
+        String[] texts = new String[changes.size()];
+        runParallel(texts.length,
+                i -> texts[i] = diffFile(changes.get(i), working));
+        for (String text : texts) {
+            System.out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        System.out.flush();
+    }
+
+    /** Helper method for printDiffs() that diffs one changed file.
+     * @param change The name, old sha1 and new sha1 of the file
+     * @param working Whether or not the new version is the working file
+     * @return The diff */
+    private String diffFile(String[] change, boolean working) {
+        byte[] newData = working && change[2] != null
+                ? Utils.readContents(new File(change[0]))
+                : readVersion(change[2]);
+        return Diff.unified(change[0], readVersion(change[1]), newData);
+    }
+
+    /** Helper method for printDiffs() that reads a version of a file,
+     * which is either staged or in the store.
+     * @param sha1 The sha1 of the version, or null if it is absent
+     * @return The contents, or null if the version is absent */
+    private byte[] readVersion(String sha1) {
+        if (sha1 == null) {
+            return null;
+        }
+        File staged = new File(".gitlet/stage/" + sha1);
+        if (!staged.isFile()) {
+            return store.readBlob(sha1);
+        }
+        try (InputStream in = store.openBlobFile(staged)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The init command.
+     * @param algorithm The hash function the new repository names
+     *                  its objects with
+     * @param chunked Whether or not the new repository keeps large
+     *                files in chunks */
+    void init(HashAlgorithm algorithm, boolean chunked) throws IOException {
         try {
             if (new File(".gitlet").mkdir()) {
                 new File(".gitlet/stage").mkdir();
                 new File(".gitlet/data").createNewFile();
+                store = new ObjectStore(new File(".gitlet"));
+                store.init(algorithm, chunked);
+                Utils.setHashAlgorithm(algorithm);
                 Commit commit = new Commit();
-                commitTree = new CommitTree(commit);
-                branches = new HashMap<>();
+                store.writeCommit(commit);
                 currBranchName = "master";
-                branches.put(currBranchName, commit);
-                currBranch = branches.get(currBranchName);
+                store.writeRef(currBranchName, commit.getId());
+                store.writeHead(currBranchName);
+                currBranch = commit;
                 stageBlobs = new ArrayList<>();
                 removed = new HashMap<>();
                 nextRem = new ArrayList<>();
@@ -200,125 +559,253 @@ public class Gitlet implements Serializable {
     /** The add command.
      * @param fileName The name of the file */
     void add(String fileName) throws IOException {
-        try {
-            if (fileName.compareTo("-A") == 0) {
-                addAll();
-                return;
-            }
-            File file = new File(fileName);
-            if (!file.exists()) {
-                System.out.println("File does not exist.");
-                return;
-            }
-            boolean tracked = currBranch.blobExists(fileName);
-            String newSha1 = Utils.sha1(Utils.readFullContents(file));
-            if (nextRem.contains(fileName)) {
-                nextRem.remove(fileName);
+        if (fileName.compareTo("-A") == 0) {
+            addAll(Runtime.getRuntime().availableProcessors());
+            return;
+        }
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            System.out.println("File does not exist.");
+            return;
+        }
+        add(fileName, file, hashFile(file));
+    }
+
+    /** Helper method for the add command that stages a file whose
+     * sha1 is already known.
+     * @param fileName The name of the file
+     * @param file The file
+     * @param newSha1 The sha1 of the file */
+    void add(String fileName, File file, String newSha1) throws IOException {
+        boolean tracked = currBranch.blobExists(fileName);
+        if (nextRem.contains(fileName)) {
+            nextRem.remove(fileName);
+            return;
+        }
+        if (tracked) {
+            String oldSha1 = currBranch.getBlob(fileName).getFileSha1();
+            if (oldSha1.compareTo(newSha1) == 0) {
                 return;
             }
-            if (tracked) {
-                String oldSha1 = currBranch.getBlob(fileName).getFileSha1();
-                if (oldSha1.compareTo(newSha1) == 0) {
-                    return;
+        }
+        File stageFile = new File(".gitlet/stage/" + newSha1);
+        if (!stageFile.exists()) {
+            store.stage(file, stageFile);
+            Blob blob = new Blob(fileName, newSha1);
+            stageBlobs.add(blob);
+        }
+    }
+
+    /** Method that is invoked by "add -A" command; used for
+     * personal purposes. The files are hashed by up to the specified
+     * number of threads at once, then staged one at a time in name
+     * order, so the result is the same for any number of threads.
+     * @param jobs The number of threads used to hash files */
+    void addAll(int jobs) throws IOException {
+        List<String> names = workingFiles();
+        File[] files = new File[names.size()];
+        for (int i = 0; i < files.length; i += 1) {
+            files[i] = new File(names.get(i));
+        }
+        String[] hashes = hashFiles(files, jobs);
+        for (int i = 0; i < files.length; i += 1) {
+            add(names.get(i), files[i], hashes[i]);
+        }
+    }
+
+    /** Method to get the paths of all the files in the working
+     * directory and its subdirectories, leaving out .gitlet. Paths
+     * are relative to the working directory and use '/' between
+     * directories, like the paths tracked by commits.
+     * @return The paths, in sorted order */
+    static List<String> workingFiles() {
+        ArrayList<String> names = new ArrayList<>();
+        collectFiles(new File("."), "", names);
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Helper method for workingFiles() that walks a directory.
+     * @param dir The directory to be walked
+     * @param prefix The path of the directory, ending with '/' unless
+     * it is the working directory
+     * @param names The list of paths found so far */
+    private static void collectFiles(File dir, String prefix,
+                                     ArrayList<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                if (name.compareTo(".gitlet") != 0) {
+                    collectFiles(file, name + Tree.SEPARATOR, names);
                 }
+            } else if (file.isFile()) {
+                names.add(name);
             }
-            File stageFile = new File(".gitlet/stage/" + newSha1);
-            if (!stageFile.exists()) {
-                stageFile.createNewFile();
-                byte[] contents = Utils.readContents(file);
-                Utils.writeContents(stageFile, contents);
-                Blob blob = new Blob(fileName, newSha1);
-                stageBlobs.add(blob);
+        }
+    }
+
+    /** Method to delete a working file, along with the directories
+     * above it that it leaves empty.
+     * @param name The path of the file */
+    static void deleteWorkFile(String name) {
+        File file = new File(name);
+        if (!file.isFile() || !file.delete()) {
+            return;
+        }
+        File parent = file.getParentFile();
+        while (parent != null && parent.delete()) {
+            parent = parent.getParentFile();
+        }
+    }
+
+    /** Method to get the sha1s of working files, using up to the
+     * specified number of threads.
+     * @param files The working files
+     * @param jobs The number of threads
+     * @return The sha1s, in the same order as the files */
+    String[] hashFiles(File[] files, int jobs) {
+        String[] hashes = new String[files.length];
+        if (jobs <= 1 || files.length <= 1) {
+            for (int i = 0; i < files.length; i += 1) {
+                hashes[i] = hashFile(files[i]);
             }
-        } catch (IOException e) {
-            throw new IOException(e);
+            return hashes;
         }
+        StatCache cache = statCache();
+        runParallel(files.length, jobs,
+                i -> hashes[i] = cache.hash(files[i]));
+        return hashes;
     }
 
-    /** Method that is invoked by "add -A" command; used for
-     * personal purposes. */
-    void addAll() throws IOException {
-        File curDir = new File(".");
-        File[] files = curDir.listFiles();
-        for (File file : files) {
-            if (file.isFile()) {
-                add(file.getName());
+    /** Method to run a task for each index from 0 to COUNT - 1 in the
+     * common pool, which has a thread for each processor.
+     * @param count The number of indices
+     * @param task The task, which is given an index */
+    static void runParallel(int count, IntConsumer task) {
+        IntStream.range(0, count).parallel().forEach(task);
+    }
+
+    /** Method to run a task for each index from 0 to COUNT - 1, using
+     * up to the specified number of threads. Asking for fewer threads
+     * than there are processors runs the task in a pool of that size,
+     * which is kept for later calls asking for the same number.
+     * @param count The number of indices
+     * @param jobs The number of threads
+     * @param task The task, which is given an index */
+    static void runParallel(int count, int jobs, IntConsumer task) {
+        if (jobs >= Runtime.getRuntime().availableProcessors()) {
+            runParallel(count, task);
+            return;
+        }
+        try {
+            pool(jobs).submit(() -> runParallel(count, task)).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw Utils.error("%s", excp.getMessage());
         }
     }
 
+    /** Helper method for runParallel() that gets the pool with the
+     * specified number of threads, making it if the pool kept from the
+     * last call has a different number.
+     * @param jobs The number of threads
+     * @return The pool */
+    private static synchronized ForkJoinPool pool(int jobs) {
+        if (pool == null || pool.getParallelism() != jobs) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(jobs);
+        }
+        return pool;
+    }
+
     /** Method that is used only by the merge command;
-     * this method is to checkout and stage a specified file.
-     * @param commit The parent commit of the current branch
-     * @param file The merged file
+     * this method is to stage a file of the given commit, whose
+     * blob is already in the store.
+     * @param commit The commit the file is taken from
      * @param name The name of the merged file */
-    void add(Commit commit, File file, String name) throws IOException {
-        try {
-            String sha1 = file.getName();
-            File newFile = new File(".gitlet/stage/" + sha1);
-            newFile.createNewFile();
-            byte[] contents = Utils.readContents(file);
-            Utils.writeContents(newFile, contents);
-            Blob blob = commit.getBlob(name);
-            stageBlobs.add(blob);
-        } catch (IOException e) {
-            throw new IOException();
+    void add(Commit commit, String name) {
+        stageBlobs.add(new Blob(name, commit.getTree().get(name)));
+    }
+
+    /** Method to move every staged blob into the store. Staged blobs
+     * are already compressed, so each one is renamed into place
+     * rather than read and written again. Blobs staged by a merge are
+     * already in the store and have no staged file. */
+    void storeStaged() {
+        for (Blob blob : stageBlobs) {
+            File file = new File(".gitlet/stage/" + blob.getFileSha1());
+            if (file.isFile()) {
+                store.moveStaged(file);
+            }
         }
     }
 
+    /** Method to empty the staging area, deleting the staged files. */
+    private void clearStage() {
+        File stage = new File(".gitlet/stage");
+        File[] files = stage.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.isDirectory()) {
+                    file.delete();
+                }
+            }
+        }
+        stageBlobs = new ArrayList<>();
+    }
+
     /** The commit command.
      * @param message The log message of the commit */
     void commit(String message) throws IOException {
-        try {
-            File stage = new File(".gitlet/stage");
-            boolean noUntrack = (nextRem.size() == 0);
-            boolean isDir = stage.isDirectory();
-            boolean noStaged = (stage.listFiles().length == 0);
-            if (noStaged && isDir && noUntrack) {
-                System.out.println("No changes added to the commit.");
-                return;
-            }
-            for (File file : stage.listFiles()) {
-                File newFile = new File(".gitlet/" + file.getName());
-                newFile.createNewFile();
-                byte[] content = Utils.readContents(file);
-                Utils.writeContents(newFile, content);
-                file.delete();
-            }
-            ArrayList<Blob> blobs = new ArrayList<>();
-            for (Blob blob : stageBlobs) {
-                if (!nextRem.contains(blob.getFileName())) {
-                    blobs.add(blob);
-                }
+        if (stageBlobs.isEmpty() && nextRem.isEmpty()) {
+            System.out.println("No changes added to the commit.");
+            return;
+        }
+        storeStaged();
+        ArrayList<Blob> blobs = new ArrayList<>();
+        for (Blob blob : stageBlobs) {
+            if (!nextRem.contains(blob.getFileName())) {
+                blobs.add(blob);
             }
-            Commit commit = new Commit(message, currBranch, blobs, nextRem);
-            nextRem = new ArrayList<>();
-            stageBlobs = new ArrayList<>();
-            commitTree.addCommit(commit, currBranch);
-            currBranch = commit;
-            branches.put(currBranchName, currBranch);
-        } catch (IOException e) {
-            throw new IOException();
         }
+        Commit commit = new Commit(message, currBranch, blobs, nextRem);
+        nextRem = new ArrayList<>();
+        stageBlobs = new ArrayList<>();
+        store.writeCommit(commit);
+        if (commitTree != null) {
+            commitTree.addCommit(commit);
+        }
+        currBranch = commit;
+        store.writeRef(currBranchName, currBranch.getId());
     }
 
     /** Method to make a merge commit.
      * @param cBranch The current branch (commit)
      * @param mBranch The merged branch (commit)
-     * @param branchName The name of the current branch
-     * @param toTrack The arraylist of file names that are to be
-     * tracked in the following merge commit */
-    void commit(Commit cBranch, Commit mBranch, String branchName,
-                ArrayList<String> toTrack) {
+     * @param branchName The name of the current branch */
+    void commit(Commit cBranch, Commit mBranch, String branchName) {
         String message = "Merged " + branchName + " into "
                 + currBranchName + ".";
+        storeStaged();
         Commit commit = new Commit(message, cBranch, mBranch,
-                nextRem, stageBlobs, toTrack);
+                stageBlobs, nextRem);
         stageBlobs = new ArrayList<>();
         nextRem = new ArrayList<>();
-        commitTree.addCommit(commit, currBranch);
+        store.writeCommit(commit);
+        if (commitTree != null) {
+            commitTree.addCommit(commit);
+        }
         currBranch = commit;
-        branches.put(currBranchName, currBranch);
+        store.writeRef(currBranchName, currBranch.getId());
     }
 
     /** The rm command.
@@ -347,10 +834,7 @@ public class Gitlet implements Serializable {
             return;
         }
         if (currBranch.blobExists(fileName)) {
-            File file = new File(fileName);
-            if (file.exists()) {
-                Utils.restrictedDelete(file);
-            }
+            deleteWorkFile(fileName);
             if (addNextRem) {
                 nextRem.add(fileName);
             }
@@ -385,7 +869,7 @@ public class Gitlet implements Serializable {
 
     /** The global-log command. */
     void globalLog() {
-        commitTree.globalLog();
+        getCommitTree().globalLog();
     }
 
     /** The find command.
@@ -393,7 +877,7 @@ public class Gitlet implements Serializable {
      * be searched for */
     void find(String message) {
         ArrayList<String> found = new ArrayList<>();
-        commitTree.find(message, found);
+        getCommitTree().find(message, found);
         if (found.size() == 0) {
             System.out.println("Found no commit with that message.");
         }
@@ -401,9 +885,7 @@ public class Gitlet implements Serializable {
 
     /** The status command. */
     void status() {
-        String[] names = new String[branches.size()];
-        names = branches.keySet().toArray(names);
-        Arrays.sort(names);
+        List<String> names = store.refNames();
         System.out.println("=== Branches ===");
         for (String name : names) {
             if (name.compareTo(currBranchName) == 0) {
@@ -437,12 +919,8 @@ public class Gitlet implements Serializable {
      * @param staged The name of the staged files */
     void status2(ArrayList<String> staged) {
         ArrayList<String> mbns = new ArrayList<>();
-        File curDir = new File(".");
-        File[] files = curDir.listFiles();
-        for (File file : files) {
-            if (file.isFile()) {
-                modButNotStaged(file, mbns);
-            }
+        for (String name : workingFiles()) {
+            modButNotStaged(name, mbns);
         }
         for (String name : staged) {
             File temp = new File(name);
@@ -476,23 +954,22 @@ public class Gitlet implements Serializable {
 
     /** Helper method to get the names of files in the working
      * directory that were modified but not staged.
-     * @param file The file to be checked
+     * @param name The path of the file to be checked
      * @param mbns The arraylist of file names that so far have been
      * checked to be modified but not staged */
-    void modButNotStaged(File file, ArrayList<String> mbns) {
+    void modButNotStaged(String name, ArrayList<String> mbns) {
         ArrayList<String> inStage = new ArrayList<>();
         for (Blob blob : stageBlobs) {
             inStage.add(blob.getFileName());
         }
-        String name = file.getName();
-        String currSha1 = Utils.sha1(Utils.readFullContents(file));
+        File file = new File(name);
         boolean staged = inStage.contains(name);
         boolean tracked = currBranch.blobExists(name);
         if (tracked) {
             Blob blob = currBranch.getBlob(name);
             String oldSha1 = blob.getFileSha1();
             if (!staged) {
-                if (currSha1.compareTo(oldSha1) != 0) {
+                if (!statCache().matches(file, oldSha1)) {
                     mbns.add(name + " (modified)");
                     return;
                 }
@@ -506,7 +983,7 @@ public class Gitlet implements Serializable {
                     break;
                 }
             }
-            if (currSha1.compareTo(stageBlob.getFileSha1()) != 0) {
+            if (!statCache().matches(file, stageBlob.getFileSha1())) {
                 mbns.add(name + " (modified)");
             }
         }
@@ -519,22 +996,17 @@ public class Gitlet implements Serializable {
      */
     ArrayList<String> untracked(ArrayList<String> rem) {
         ArrayList<String> list = new ArrayList<>();
-        File curDir = new File(".");
-        File[] files = curDir.listFiles();
         ArrayList<String> stage = new ArrayList<>();
         for (Blob blob : stageBlobs) {
             stage.add(blob.getFileName());
         }
-        for (File file : files) {
-            if (file.isFile()) {
-                String name = file.getName();
-                boolean untracked1 = !currBranch.blobExists(name);
-                boolean untracked2 = rem.contains(name);
-                boolean notStaged = !stage.contains(name);
+        for (String name : workingFiles()) {
+            boolean untracked1 = !currBranch.blobExists(name);
+            boolean untracked2 = rem.contains(name);
+            boolean notStaged = !stage.contains(name);
 
-                if ((untracked1 && notStaged) || untracked2) {
-                    list.add(name);
-                }
+            if ((untracked1 && notStaged) || untracked2) {
+                list.add(name);
             }
         }
         Collections.sort(list);
@@ -550,18 +1022,14 @@ public class Gitlet implements Serializable {
             return;
         }
         Blob blob = currBranch.getBlob(fileName);
-        File oldFile = new File(
-                ".gitlet/" + blob.getFileSha1());
-        byte[] data = Utils.readContents(oldFile);
-        File curFile = new File(fileName);
-        Utils.writeContents(curFile, data);
+        store.readBlobTo(blob.getFileSha1(), new File(fileName));
     }
 
     /** The checkout command (2nd case).
      * @param fileName The name of the file
      * @param commitID The commit ID */
     void checkout2(String commitID, String fileName) {
-        Commit commit = commitTree.findCommit(commitID);
+        Commit commit = findCommit(commitID);
         if (commit == null) {
             System.out.println("No commit with that id exists.");
             return;
@@ -573,18 +1041,13 @@ public class Gitlet implements Serializable {
             return;
         }
         Blob blob = commit.getBlob(fileName);
-        File oldFile = new File(
-                ".gitlet/" + blob.getFileSha1());
-        byte[] data = Utils.readContents(oldFile);
-        File curFile = new File(fileName);
-        Utils.writeContents(curFile, data);
+        store.readBlobTo(blob.getFileSha1(), new File(fileName));
     }
 
     /** The checkout command (3rd case).
      * @param branchName The name of the branch */
-    @SuppressWarnings("unchecked")
     void checkout3(String branchName) throws  IOException {
-        if (!branches.containsKey(branchName)) {
+        if (!store.hasRef(branchName)) {
             System.out.println("No such branch exists.");
             return;
         }
@@ -593,71 +1056,80 @@ public class Gitlet implements Serializable {
                     + " the current branch.");
             return;
         }
-        File curDir = new File(".");
-        File[] files = curDir.listFiles();
-        Commit newBranch = branches.get(branchName);
-        ArrayList<String> newBlobNames = new ArrayList(
-                newBranch.getBlobs().keySet());
-        ArrayList<String> oldBlobNames = new ArrayList<>(
-                currBranch.getBlobs().keySet());
-        for (File file : files) {
-            if (!file.isDirectory()) {
-                String name = file.getName();
-                String fileSha1 = Utils.sha1(Utils.readFullContents(file));
-                if (!oldBlobNames.contains(name)) {
-                    if (newBranch.blobExists(name)
-                            && fileSha1.compareTo(newBranch.getBlob(
-                            name).getFileSha1()) != 0) {
-                        System.out.println("There is an untracked file "
-                                + "in the way; delete it or add it first.");
-                        System.exit(0);
-                    }
-                }
+        Commit newBranch = store.readRefCommit(branchName);
+        checkoutCommit(newBranch);
+        currBranchName = branchName;
+        currBranch = newBranch;
+        store.writeHead(currBranchName);
+    }
+
+    /** Helper method for checkout3() and reset() that replaces the
+     * files tracked by the current commit with the files tracked by
+     * another commit, and clears the stage. Only the files that
+     * differ between the two commits' trees are checked for untracked
+     * files in the way, deleted or written, so directories whose trees
+     * did not change are never walked. A file both commits track the
+     * same way is left as it is in the working directory, unless it
+     * was staged or removed, in which case the version of the commit
+     * is written back as the stage is cleared. The files are written
+     * by several threads at once.
+     * @param newBranch The commit to be checked out */
+    void checkoutCommit(Commit newBranch) {
+        TreeMap<String, String[]> changes = Tree.diff(currBranch.getTree(),
+                newBranch.getTree());
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            File file = new File(change.getKey());
+            String oldSha1 = change.getValue()[0];
+            String newSha1 = change.getValue()[1];
+            if (oldSha1 == null && file.isFile()
+                    && hashFile(file).compareTo(newSha1) != 0) {
+                throw Utils.error("There is an untracked file "
+                        + "in the way; delete it or add it first.");
             }
         }
-        for (String name : oldBlobNames) {
-            if (!newBlobNames.contains(name)) {
-                File file = new File(name);
-                file.delete();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] == null) {
+                deleteWorkFile(change.getKey());
             }
         }
-        for (Blob blob : newBranch.getBlobs().values()) {
-            File newFile = new File(
-                    ".gitlet/" + blob.getFileSha1());
-            File curFile = new File(blob.getFileName());
-            if (!curFile.exists()) {
-                curFile.createNewFile();
+        TreeMap<String, String> writes = new TreeMap<>();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] != null) {
+                writes.put(change.getKey(), change.getValue()[1]);
             }
-            byte[] data = Utils.readContents(newFile);
-            Utils.writeContents(curFile, data);
         }
-        currBranchName = branchName;
-        currBranch = branches.get(currBranchName);
-        File stage = new File(".gitlet/stage");
-        assert stage.isDirectory();
-        for (File file : stage.listFiles()) {
-            if (!file.isDirectory()) {
-                file.delete();
+        ArrayList<String> staged = new ArrayList<>(nextRem);
+        for (Blob blob : stageBlobs) {
+            staged.add(blob.getFileName());
+        }
+        for (String name : staged) {
+            String sha1 = newBranch.getTree().get(name);
+            if (sha1 != null) {
+                writes.putIfAbsent(name, sha1);
             }
         }
-        stageBlobs = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>(writes.keySet());
+        ArrayList<String> sha1s = new ArrayList<>(writes.values());
+        runParallel(names.size(),
+                i -> store.readBlobTo(sha1s.get(i), new File(names.get(i))));
+        clearStage();
     }
 
     /** The branch command.
      * @param branchName The name of the branch */
     void branch(String branchName) {
-        if (branches.containsKey(branchName)) {
+        if (store.hasRef(branchName)) {
             System.out.println("A branch with "
                     + "that name already exists.");
             return;
         }
-        branches.put(branchName, currBranch);
+        store.writeRef(branchName, currBranch.getId());
     }
 
     /** The rm-branch command.
      * @param branchName The name of the branch */
     void rmBranch(String branchName) {
-        if (!branches.containsKey(branchName)) {
+        if (!store.hasRef(branchName)) {
             System.out.println("A branch with that "
                     + "name does not exist.");
             return;
@@ -667,75 +1139,30 @@ public class Gitlet implements Serializable {
                     + "current branch.");
             return;
         }
-        branches.remove(branchName);
+        store.deleteRef(branchName);
     }
 
     /** The reset command.
      * @param commitID The commit ID*/
-    @SuppressWarnings("unchecked")
     void reset(String commitID) throws IOException {
-        Commit newBranch = commitTree.findCommit(commitID);
+        Commit newBranch = findCommit(commitID);
         if (newBranch == null) {
             System.out.println("No commit with that id exists.");
             return;
         }
-        ArrayList<String> newBlobNames = new ArrayList(
-                newBranch.getBlobs().keySet());
-        ArrayList<String> oldBlobNames = new ArrayList<>(
-                currBranch.getBlobs().keySet());
-        File curDir = new File(".");
-        File[] files = curDir.listFiles();
-        for (File file : files) {
-            if (!file.isDirectory()) {
-                String name = file.getName();
-                String fileSha1 = Utils.sha1(Utils.readFullContents(file));
-                if (!oldBlobNames.contains(name)) {
-                    if (newBranch.blobExists(name)
-                            && fileSha1.compareTo(newBranch.getBlob(
-                            name).getFileSha1()) != 0) {
-                        System.out.println("There is an untracked file "
-                                + "in the way; delete it or add it first.");
-                        System.exit(0);
-                    }
-                }
-            }
-        }
-        for (Blob blob : newBranch.getBlobs().values()) {
-            File oldFile = new File(
-                    ".gitlet/" + blob.getFileSha1());
-            byte[] data = Utils.readContents(oldFile);
-            File curFile = new File(blob.getFileName());
-            Utils.writeContents(curFile, data);
-        }
-        for (String name : currBranch.getBlobs().keySet()) {
-            if (!newBranch.getBlobs().keySet().contains(name)) {
-                File temp = new File(name);
-                if (temp.exists() && temp.isFile()) {
-                    temp.delete();
-                }
-            }
-        }
+        checkoutCommit(newBranch);
         currBranch = newBranch;
-        branches.put(currBranchName, currBranch);
-        File stage = new File(".gitlet/stage");
-        assert stage.isDirectory();
-        for (File file : stage.listFiles()) {
-            if (!file.isDirectory()) {
-                file.delete();
-            }
-        }
-        stageBlobs = new ArrayList<>();
+        store.writeRef(currBranchName, currBranch.getId());
     }
 
     /** The merge command.
      * @param branchName The name of the branch */
     void merge(String branchName) throws IOException {
-        File stage = new File(".gitlet/stage");
-        if (stage.listFiles().length > 0 || nextRem.size() > 0) {
+        if (!stageBlobs.isEmpty() || nextRem.size() > 0) {
             System.out.println("You have uncommitted changes.");
             return;
         }
-        if (!branches.keySet().contains(branchName)) {
+        if (!store.hasRef(branchName)) {
             System.out.println("A branch with that"
                     + " name does not exist.");
             return;
@@ -744,18 +1171,9 @@ public class Gitlet implements Serializable {
             System.out.println("Cannot merge a branch with itself.");
             return;
         }
-        ArrayList<String> currBranchPar = new ArrayList<>();
-        currBranch.getParentHistory(currBranchPar);
-        Commit given = branches.get(branchName);
-        Commit tempPar = given;
-        Commit splitPoint = null;
-        while (tempPar != null) {
-            if (currBranchPar.contains(tempPar.getSha1())) {
-                splitPoint = tempPar;
-                break;
-            }
-            tempPar = tempPar.getParent1();
-        }
+        Commit given = store.readRefCommit(branchName);
+        Commit splitPoint = store.readCommit(store.mergeBase(
+                currBranch.getId(), given.getId()));
         assert splitPoint != null;
         if (splitPoint.equals(given)) {
             System.out.println("Given branch is an ancestor "
@@ -763,120 +1181,271 @@ public class Gitlet implements Serializable {
             return;
         }
         if (splitPoint.equals(currBranch)) {
-            currBranch = given;
+            reset(given.getSha1());
             System.out.println("Current branch fast-forwarded.");
             return;
         }
         if (checkMergeUntracked(splitPoint, given)) {
-            System.out.println("There is an untracked file in "
+            throw Utils.error("There is an untracked file in "
                     + "the way; delete it or add it first.");
-            System.exit(0);
         }
         merge2(splitPoint, given, branchName);
     }
 
     /** Helper method for original merge() method;
-     * this is literally just to satisfy the stylechecker.
+     * this is literally just to satisfy the stylechecker. Only the
+     * files that differ between the split point and the given branch
+     * can change in the merge, so those are the only files looked at,
+     * and directories the given branch did not change are skipped.
+     * The merge is done in three passes: what happens to each file is
+     * planned first, without touching anything; then the files are
+     * written, merged or deleted by as many threads as there are
+     * processors; then the staging area is updated with the results
+     * in one pass, in name order. Every file taken from the given
+     * branch is staged or removed, so the merge commit is the current
+     * commit with those changes.
      * @param branchName The name of the branch
      * @param given The given commit
      * @param splitPoint The split point (commit) */
     void merge2(Commit splitPoint, Commit given, String branchName)
             throws IOException {
-        ArrayList<String> toTrack = new ArrayList<>();
+        List<MergeStep> plan = mergePlan(splitPoint, given);
+        StatCache cache = statCache();
+        runParallel(plan.size(), i -> mergeFile(plan.get(i), cache));
         boolean printMC = false;
-        for (Blob blob : splitPoint.getBlobs().values()) {
-            String name = blob.getFileName();
-            File splitFile = new File(".gitlet/" + blob.getFileSha1());
-            File workFile = new File(name);
-            String splitSha1 = blob.getFileSha1();
-            boolean currAbsent = !currBranch.blobExists(name);
-            boolean givenAbsent = !given.blobExists(name);
-            if (!currAbsent && givenAbsent) {
-                String currSha1 = currBranch.getBlob(name).getFileSha1();
-                boolean modCurr = splitSha1.compareTo(currSha1) != 0;
-                if (!modCurr) {
-                    rm(name);
-                } else if (modCurr) {
-                    File currFile = new File(".gitlet/" + currSha1);
-                    File givenFile = new File("blank.txt");
-                    givenFile.createNewFile();
-                    mergeConflict(workFile, currFile, givenFile);
-                    givenFile.delete();
-                    add(name);
-                    toTrack.add(name);
-                    printMC = true;
+        for (MergeStep step : plan) {
+            if (step.action == MergeStep.TAKE) {
+                stageBlobs.add(new Blob(step.name, step.given));
+            } else if (step.action == MergeStep.REMOVE) {
+                nextRem.add(step.name);
+            } else {
+                if (!step.result.equals(step.tracked)) {
+                    stageBlobs.add(new Blob(step.name, step.result));
                 }
-            } else if (currAbsent && !givenAbsent) {
-                String givenSha1 = given.getBlob(name).getFileSha1();
-                if (splitSha1.compareTo(givenSha1) != 0) {
-                    File currFile = new File("blank.txt");
-                    File givenFile = new File(".gitlet/" + givenSha1);
-                    currFile.createNewFile();
-                    mergeConflict(workFile, currFile, givenFile);
-                    currFile.delete();
-                    add(name);
-                    toTrack.add(name);
-                    printMC = true;
+                printMC |= step.conflict;
+            }
+        }
+        if (printMC) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        commit(currBranch, given, branchName);
+    }
+
+    /** What a merge does to one file. */
+    private static class MergeStep {
+
+        /** The action that takes the given branch's version. */
+        static final int TAKE = 0;
+
+        /** The action that removes the file. */
+        static final int REMOVE = 1;
+
+        /** The action for a file one branch changed and the other
+         *  removed, which conflicts as a whole. */
+        static final int CONFLICT = 2;
+
+        /** The action for a file both branches changed, which is
+         *  merged line by line. */
+        static final int MERGE = 3;
+
+        /** The path of the file. */
+        private final String name;
+
+        /** The action. */
+        private final int action;
+
+        /** The sha1 of the file at the split point, or null. */
+        private final String split;
+
+        /** The sha1 of the file in the current branch, or null. */
+        private final String curr;
+
+        /** The sha1 of the file in the given branch, or null. */
+        private final String given;
+
+        /** The sha1 of the file by this name in the current commit, or
+         *  null. It differs from curr only for a file the given branch
+         *  renamed. */
+        private final String tracked;
+
+        /** The sha1 of the file as merged, for CONFLICT and MERGE. */
+        private String result;
+
+        /** Whether or not merging the file ran into a conflict. */
+        private boolean conflict;
+
+        /** Constructor for a step.
+         * @param path The path of the file
+         * @param kind The action
+         * @param splitSha1 The sha1 at the split point, or null
+         * @param currSha1 The sha1 in the current branch, or null
+         * @param givenSha1 The sha1 in the given branch, or null
+         * @param trackedSha1 The sha1 of PATH in the current commit, or
+         *                    null */
+        MergeStep(String path, int kind, String splitSha1, String currSha1,
+                  String givenSha1, String trackedSha1) {
+            name = path;
+            action = kind;
+            split = splitSha1;
+            curr = currSha1;
+            given = givenSha1;
+            tracked = trackedSha1;
+        }
+    }
+
+    /** Helper method for merge2() that plans what the merge does to
+     * each file, without writing any of them.
+     * @param splitPoint The split point (commit)
+     * @param given The given commit
+     * @return The steps, in name order; files the merge leaves alone
+     * have none */
+    List<MergeStep> mergePlan(Commit splitPoint, Commit given) {
+        TreeMap<String, MergeStep> plan = new TreeMap<>();
+        Tree curr = currBranch.getTree();
+        TreeMap<String, String[]> changes = Tree.diff(splitPoint.getTree(),
+                given.getTree());
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String name = change.getKey();
+            String splitSha1 = change.getValue()[0];
+            String givenSha1 = change.getValue()[1];
+            String currSha1 = curr.get(name);
+            int action;
+            if (splitSha1 == null) {
+                if (currSha1 != null) {
+                    continue;
                 }
-            } else if (!currAbsent && !givenAbsent) {
-                String givenSha1 = given.getBlob(name).getFileSha1();
-                File givenFile = new File(".gitlet/" + givenSha1);
-                boolean modGiven = splitSha1.compareTo(givenSha1) != 0;
-                String currSha1 = currBranch.getBlob(name).getFileSha1();
-                File currFile = new File(".gitlet/" + currSha1);
-                boolean modCurr = splitSha1.compareTo(currSha1) != 0;
-                if (modGiven && modCurr) {
-                    if (currSha1.compareTo(givenSha1) != 0) {
-                        mergeConflict(workFile, currFile, givenFile);
-                        add(name);
-                        toTrack.add(name);
-                        printMC = true;
-                    }
-                } else if (modGiven && !modCurr) {
-                    byte[] contents = Utils.readContents(givenFile);
-                    Utils.writeContents(workFile, contents);
-                    toTrack.add(name);
+                action = MergeStep.TAKE;
+            } else if (givenSha1 == null) {
+                if (currSha1 == null) {
+                    continue;
                 }
+                action = splitSha1.compareTo(currSha1) == 0
+                        ? MergeStep.REMOVE : MergeStep.CONFLICT;
+            } else if (currSha1 == null) {
+                action = MergeStep.CONFLICT;
+            } else if (splitSha1.compareTo(currSha1) == 0) {
+                action = MergeStep.TAKE;
+            } else if (currSha1.compareTo(givenSha1) != 0) {
+                action = MergeStep.MERGE;
+            } else {
+                continue;
             }
+            plan.put(name, new MergeStep(name, action, splitSha1, currSha1,
+                    givenSha1, currSha1));
         }
-        merge3(splitPoint, given, branchName, printMC, toTrack);
+        followRenames(plan, splitPoint.getTree(), given.getTree(), changes);
+        return new ArrayList<>(plan.values());
     }
 
-    /** Helper method for merge() and merge2();
-     * literally just to satisfy stylechecker.
-     * @param given The given branch (commit)
-     * @param branchName The name of the given branch
-     * @param splitPoint The split point (commit)
-     * @param printMC Whether or not to print merge conflict message
-     * @param toTrack The arraylist of file names that are to be tracked
-     * in the following merge commit */
-    void merge3(Commit splitPoint, Commit given, String branchName,
-                boolean printMC, ArrayList<String> toTrack)
-            throws IOException {
-        for (Blob blob : given.getBlobs().values()) {
-            String name = blob.getFileName();
-            boolean splitAbsent = !splitPoint.blobExists(name);
-            boolean currAbsent = !currBranch.blobExists(name);
-            if (splitAbsent && currAbsent) {
-                File file = new File(name);
-                checkout2(given.getSha1(), name);
-                add(given, file, name);
-                toTrack.add(name);
+    /** Helper method for mergePlan() that changes the plan for the
+     * files one branch renamed and the other changed. Keyed by name,
+     * such a file would be removed on one side and changed on the
+     * other, which conflicts; instead the change is merged into the
+     * file under its new name.
+     * @param plan The steps planned so far, by name
+     * @param split The tree of the split point
+     * @param given The tree of the given commit
+     * @param changes The files changed from the split point to the
+     * given commit */
+    private void followRenames(TreeMap<String, MergeStep> plan, Tree split,
+                               Tree given, TreeMap<String, String[]> changes) {
+        Tree curr = currBranch.getTree();
+        for (Map.Entry<String, String> rename : renames(changes).entrySet()) {
+            String from = rename.getKey();
+            String to = rename.getValue();
+            String splitSha1 = split.get(from);
+            String currSha1 = curr.get(from);
+            if (currSha1 == null || currSha1.equals(splitSha1)
+                    || curr.get(to) != null) {
+                continue;
             }
+            plan.put(from, new MergeStep(from, MergeStep.REMOVE, splitSha1,
+                    currSha1, null, currSha1));
+            plan.put(to, new MergeStep(to, MergeStep.MERGE, splitSha1,
+                    currSha1, given.get(to), null));
         }
-        for (Blob blob : currBranch.getBlobs().values()) {
-            String name = blob.getFileName();
-            boolean splitAbsent = !splitPoint.blobExists(name);
-            boolean givenAbsent = !given.blobExists(name);
-            File curr = new File(name);
-            if (splitAbsent && givenAbsent && curr.exists()) {
-                toTrack.add(name);
+        for (Map.Entry<String, String> rename
+                : renames(Tree.diff(split, curr)).entrySet()) {
+            String from = rename.getKey();
+            String to = rename.getValue();
+            String splitSha1 = split.get(from);
+            String givenSha1 = given.get(from);
+            if (givenSha1 == null || givenSha1.equals(splitSha1)
+                    || given.get(to) != null) {
+                continue;
             }
+            plan.remove(from);
+            plan.put(to, new MergeStep(to, MergeStep.MERGE, splitSha1,
+                    curr.get(to), givenSha1, curr.get(to)));
         }
-        if (printMC) {
-            System.out.println("Encountered a merge conflict.");
+    }
+
+    /** Helper method for followRenames() that finds the files renamed
+     * between two commits.
+     * @param changes The files changed between the commits, with
+     * their old and new sha1s
+     * @return The new name of each renamed file, by old name */
+    private TreeMap<String, String> renames(
+            TreeMap<String, String[]> changes) {
+        TreeMap<String, String> removed = new TreeMap<>();
+        TreeMap<String, String> added = new TreeMap<>();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] == null) {
+                removed.put(change.getKey(), change.getValue()[0]);
+            } else if (change.getValue()[0] == null) {
+                added.put(change.getKey(), change.getValue()[1]);
+            }
+        }
+        if (removed.isEmpty() || added.isEmpty()) {
+            return new TreeMap<>();
+        }
+        return similarityIndex().renames(removed, added, store);
+    }
+
+    /** Helper method for merge2() that carries out one step of a merge
+     * in the working directory. It may run in several threads at
+     * once, so it only touches the step's own file and staged blob;
+     * a merged file is hashed and staged from its contents in memory,
+     * so it is never read back.
+     * @param step The step
+     * @param cache The stat cache */
+    private void mergeFile(MergeStep step, StatCache cache) {
+        File workFile = new File(step.name);
+        if (step.action == MergeStep.TAKE) {
+            store.readBlobTo(step.given, workFile);
+            return;
+        } else if (step.action == MergeStep.REMOVE) {
+            deleteWorkFile(step.name);
+            return;
+        }
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        try {
+            if (step.action == MergeStep.MERGE) {
+                step.conflict = Diff3.merge(store.readBlob(step.split),
+                        store.readBlob(step.curr), store.readBlob(step.given),
+                        merged);
+            } else {
+                Diff3.conflict(merged, step.curr == null ? new byte[0]
+                        : store.readBlob(step.curr), step.given == null
+                        ? new byte[0] : store.readBlob(step.given));
+                step.conflict = true;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] contents = merged.toByteArray();
+        File parent = workFile.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Utils.writeContents(workFile, contents);
+        step.result = Utils.fileSha1(workFile, contents);
+        cache.put(workFile, contents, step.result);
+        File stageFile = new File(".gitlet/stage/" + step.result);
+        if (!step.result.equals(step.tracked)) {
+            ObjectStore.writeBlob(new ByteArrayInputStream(contents),
+                    stageFile);
         }
-        commit(currBranch, given, branchName, toTrack);
     }
 
     /** Method to check if there is an untracked file when merging.
@@ -884,60 +1453,33 @@ public class Gitlet implements Serializable {
      * @param given The given branch (commit)
      * @return Whether or not there is an untracked file
      */
-    @SuppressWarnings("unchecked")
     boolean checkMergeUntracked(Commit split, Commit given) {
-        ArrayList<String> currNames = new ArrayList(
-                currBranch.getBlobs().keySet());
-        ArrayList<String> splitNames = new ArrayList<>(
-                split.getBlobs().keySet());
-        ArrayList<String> givenNames = new ArrayList<>(
-                given.getBlobs().keySet());
-        File curDir = new File(".");
-        File[] files = curDir.listFiles();
-        for (File workFile : files) {
-            String name = workFile.getName();
-            if (!currNames.contains(name)) {
-                if (!splitNames.contains(name) && givenNames.contains(name)) {
+        Tree splitTree = split.getTree();
+        Tree givenTree = given.getTree();
+        for (String name : workingFiles()) {
+            if (!currBranch.blobExists(name)) {
+                String splitSha1 = splitTree.get(name);
+                String givenSha1 = givenTree.get(name);
+                if (splitSha1 == null && givenSha1 != null) {
+                    return true;
+                } else if (splitSha1 != null
+                        && splitSha1.equals(givenSha1)) {
                     return true;
-                } else if (splitNames.contains(name)) {
-                    Blob splitBlob = split.getBlob(name);
-                    String splitSha1 = splitBlob.getFileSha1();
-                    Blob givenBlob = given.getBlob(name);
-                    String givenSha1 = givenBlob.getFileSha1();
-                    if (splitSha1.compareTo(givenSha1) == 0) {
-                        return true;
-                    }
                 }
             }
         }
         return false;
     }
 
-    /** Helper method for changing and adding contents to a specified
-     * file in the working directory when a merge conflict is encountered.
-     * @param currFile The file in the current branch
-     * @param givenFile The file in the given branch
-     * @param workFile The file in the working directory */
-    void mergeConflict(File workFile, File currFile, File givenFile) {
-        String str1 = "<<<<<<< HEAD";
-        String sep = System.lineSeparator();
-        String str2 = "=======";
-        String str3 = ">>>>>>>";
-        byte[] currData = Utils.readContents(currFile);
-        byte[] givenData = Utils.readContents(givenFile);
-        Utils.writeContents(workFile, str1, sep, currData,
-                str2, sep, givenData, str3, sep);
-    }
-
     /** Method to get the branch with the name.
      * @param name The name of the branch
      * @return The branch with the name */
     Commit getBranch(String name) {
-        if (!branches.keySet().contains(name)) {
+        if (!store.hasRef(name)) {
             System.out.println("Given branch does not exist.");
             return null;
         }
-        return branches.get(name);
+        return store.readRefCommit(name);
     }
 
     /** The add-remote command.
@@ -965,102 +1507,51 @@ public class Gitlet implements Serializable {
     /** The push command.
      * @param branchName The name of the branch
      * @param remName The name of the remote*/
-    void push(String remName, String branchName) throws IOException {
-        try {
-            String dir = remotes.get(remName);
-            File rem = new File(dir + "/data");
-            if (!rem.exists() || !remotes.keySet().contains(remName)) {
-                System.out.println("Remote directory not found.");
-                return;
-            }
-            byte[] data = Utils.readObject(rem, byte[].class);
-            Gitlet remGitlet = (Gitlet) Utils.deserialize(data);
-            String remBranchName = remName + "/" + branchName;
-            Commit branch = remGitlet.currBranch;
-            if (!remGitlet.branches.containsKey(remBranchName)) {
-                remGitlet.branches.put(remBranchName, branch);
-            }
-            if (!inHistory(branch)) {
-                System.out.println("Please pull down remote "
-                        + "changes before pushing.");
-                return;
-            }
-            Commit tCommit = currBranch;
-            ArrayList<String> remBranchPar = new ArrayList<>();
-            branch.getParentHistory(remBranchPar);
-            Commit splitPoint = null;
-            while (tCommit != null && !tCommit.equals(branch)) {
-                for (Blob blob : tCommit.getBlobs().values()) {
-                    String sha1 = blob.getFileSha1();
-                    File remFile = new File(dir + "/" + sha1);
-                    if (!remFile.exists()) {
-                        remFile.createNewFile();
-                        File curFile = new File(".gitlet/" + sha1);
-                        byte[] contents = Utils.readContents(curFile);
-                        Utils.writeContents(remFile, contents);
-                    }
-                }
-                if (remBranchPar.contains(tCommit.getSha1())) {
-                    splitPoint = tCommit;
-                    break;
-                }
-                tCommit = tCommit.getParent1();
-            }
-            CommitTree ct = commitTree.findCT(splitPoint);
-            remGitlet.commitTree.addCommitTree(ct, splitPoint);
-            String commitID = currBranch.getSha1();
-            remGitlet.reset(commitID);
-            byte[] contents = Utils.serialize(remGitlet);
-            Utils.writeObject(new File(dir + "/data"), contents);
-        } catch (IOException e) {
-            throw new IOException();
+    void push(String remName, String branchName) {
+        String dir = remotes.get(remName);
+        File rem = new File(dir + "/data");
+        if (!rem.exists() || !remotes.keySet().contains(remName)) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        ObjectStore remStore = new ObjectStore(new File(dir));
+        if (remStore.hashAlgorithm() != store.hashAlgorithm()) {
+            System.out.println("Remote uses a different hash algorithm.");
+            return;
         }
+        Commit branch = remStore.readRefCommit(branchName);
+        if (branch != null && !inHistory(branch)) {
+            System.out.println("Please pull down remote "
+                    + "changes before pushing.");
+            return;
+        }
+        remStore.copyCommits(store, currBranch.getId());
+        remStore.writeRef(branchName, currBranch.getId());
     }
 
     /** The fetch command.
      * @param branchName The name of the branch
      * @param remName The name of the remote */
-    void fetch(String remName, String branchName) throws IOException {
+    void fetch(String remName, String branchName) {
         String dir = remotes.get(remName);
         File rem = new File(dir + "/data");
         if (!rem.exists() || !remotes.keySet().contains(remName)) {
             System.out.println("Remote directory not found.");
             return;
         }
-        byte[] data = Utils.readObject(rem, byte[].class);
-        Gitlet remGitlet = (Gitlet) Utils.deserialize(data);
-        if (!remGitlet.branches.containsKey(branchName)) {
-            System.out.println("That remote does not have that branch.");
+        ObjectStore remStore = new ObjectStore(new File(dir));
+        if (remStore.hashAlgorithm() != store.hashAlgorithm()) {
+            System.out.println("Remote uses a different hash algorithm.");
             return;
         }
-        Commit remCommit = remGitlet.getBranch(branchName);
-        Commit tCommit = remCommit;
-        ArrayList<String> currBranchPar = new ArrayList<>();
-        currBranch.getParentHistory(currBranchPar);
-        Commit splitPoint = null;
-        while (tCommit != null && !tCommit.equals(currBranch)) {
-            for (Blob blob : tCommit.getBlobs().values()) {
-                String sha1 = blob.getFileSha1();
-                File curFile = new File(".gitlet/" + sha1);
-                if (!curFile.exists()) {
-                    curFile.createNewFile();
-                    File remFile = new File(dir + "/" + sha1);
-                    byte[] contents = Utils.readContents(remFile);
-                    Utils.writeContents(curFile, contents);
-                }
-            }
-            if (currBranchPar.contains(tCommit.getSha1())) {
-                splitPoint = tCommit;
-                break;
-            }
-            tCommit = tCommit.getParent1();
+        if (!remStore.hasRef(branchName)) {
+            System.out.println("That remote does not have that branch.");
+            return;
         }
-        String local = remName + "/" + branchName;
-        branches.put(local, remCommit);
-        CommitTree ct = remGitlet.commitTree.findCT(splitPoint);
-        commitTree.addCommitTree(ct, splitPoint);
-        byte[] contents = Utils.serialize(remGitlet);
-        Utils.writeObject(new File(dir + "/data"), contents);
+        ObjectId remCommitID = remStore.readRef(branchName);
+        store.copyCommits(remStore, remCommitID);
+        commitTree = null;
+        store.writeRef(remName + "/" + branchName, remCommitID);
     }
 
     /** The pull command.
@@ -1077,14 +1568,7 @@ public class Gitlet implements Serializable {
      * @return Whether or not it exists in the history
      */
     boolean inHistory(Commit branch) {
-        Commit localBranch = currBranch;
-        while (localBranch != null) {
-            if (localBranch.getSha1().compareTo(branch.getSha1()) == 0) {
-                return true;
-            }
-            localBranch = localBranch.getParent1();
-        }
-        return false;
+        return store.isAncestor(branch.getId(), currBranch.getId());
     }
 
 }
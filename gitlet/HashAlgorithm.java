@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** HashAlgorithm enum of the hash functions a repository can name its
+ *  blobs, trees and commits with. A repository is made with one of
+ *  them and keeps it for good; its name is kept in .gitlet/hash, and
+ *  repositories without that file use SHA-1. Every id is the first
+ *  ObjectId.BYTES bytes of the digest, so ids have the same width
+ *  whichever function made them.
+ *  @author Brian Unggul
+ */
+enum HashAlgorithm {
+
+    /** SHA-1, which every repository used before SHA-256 was added. */
+    SHA1("sha1", "SHA-1"),
+
+    /** SHA-256, cut to the width of an id. */
+    SHA256("sha256", "SHA-256");
+
+    /** The name of the function in .gitlet/hash and on the command
+     *  line. */
+    private final String name;
+
+    /** The name of the function in java.security. */
+    private final String javaName;
+
+    /** Constructor for a hash function.
+     * @param hashName The name used by Gitlet
+     * @param digestName The name used by java.security */
+    HashAlgorithm(String hashName, String digestName) {
+        name = hashName;
+        javaName = digestName;
+    }
+
+    /** Method to get the name of this function as Gitlet writes it.
+     * @return The name */
+    String getName() {
+        return name;
+    }
+
+    /** Method to start a new digest with this function.
+     * @return The digest */
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(javaName);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + javaName);
+        }
+    }
+
+    /** Method to get the function with the specified name.
+     * @param hashName The name, as Gitlet writes it
+     * @return The function, or null if there is none by that name */
+    static HashAlgorithm forName(String hashName) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(hashName)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+}
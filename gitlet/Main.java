@@ -1,7 +1,9 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
@@ -21,13 +23,24 @@ public class Main {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
         } else if (args[0].compareTo("init") == 0) {
-            if (args.length > 1) {
+            HashAlgorithm algorithm = HashAlgorithm.SHA1;
+            boolean chunked = false;
+            for (int i = 1; i < args.length && algorithm != null; i += 1) {
+                if (args[i].startsWith("--hash=")) {
+                    algorithm = HashAlgorithm.forName(
+                            args[i].substring("--hash=".length()));
+                } else if (args[i].compareTo("--chunked") == 0) {
+                    chunked = true;
+                } else {
+                    algorithm = null;
+                }
+            }
+            if (algorithm == null) {
                 System.out.println("Incorrect operands.");
             } else {
                 Gitlet gitlet = new Gitlet();
-                gitlet.init();
-                byte[] data = Utils.serialize(gitlet);
-                Utils.writeObject(new File(".gitlet/data"), data);
+                gitlet.init(algorithm, chunked);
+                gitlet.save();
             }
         } else {
             File gitDir = new File(".gitlet");
@@ -35,13 +48,100 @@ public class Main {
                 System.out.println("Not in an initialized Gitlet directory.");
                 return;
             }
-            byte[] data = Utils.readObject(
-                    new File(".gitlet/data"), byte[].class);
-            Gitlet gitlet = (Gitlet) Utils.deserialize(data);
-            gitlet.process(args);
-            byte[] contents = Utils.serialize(gitlet);
-            Utils.writeObject(new File(".gitlet/data"), contents);
+            Gitlet gitlet = Gitlet.load(gitDir);
+            if (args[0].compareTo("batch") == 0) {
+                if (args.length > 1) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                batch(gitlet, new BufferedReader(
+                        new InputStreamReader(System.in)));
+                gitlet.save();
+                return;
+            }
+            try {
+                gitlet.process(args);
+            } catch (GitletException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            gitlet.save();
+        }
+    }
+
+    /** Method for the batch command, which runs one command per line
+     *  read from IN against the same loaded repository, so the
+     *  repository is only read once and saved once, by the caller,
+     *  however many commands there are. Each line is split into
+     *  arguments like a shell would, with double quotes around
+     *  arguments that hold spaces. Empty lines and lines starting
+     *  with # are skipped. A command that fails prints its message
+     *  and the next command still runs.
+     * @param gitlet The loaded repository
+     * @param in The commands to be run */
+    static void batch(Gitlet gitlet, BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = splitCommand(line);
+            if (words.length == 0 || words[0].startsWith("#")) {
+                continue;
+            }
+            if (words[0].compareTo("init") == 0) {
+                System.out.println("A Gitlet version-control"
+                        + " system already exists in the current directory.");
+            } else if (words[0].compareTo("batch") == 0) {
+                System.out.println("Incorrect operands.");
+            } else {
+                try {
+                    gitlet.process(words);
+                } catch (GitletException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Method to split a command line into its arguments. Arguments
+     *  are separated by spaces or tabs, except inside double quotes;
+     *  inside double quotes a backslash makes the next character
+     *  part of the argument.
+     * @param line The command line
+     * @return The arguments */
+    static String[] splitCommand(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (c == ' ' || c == '\t') {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
         }
+        return words.toArray(new String[0]);
     }
 
 }
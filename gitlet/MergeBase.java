@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** MergeBase class that finds the split point of two commits. It walks
+ *  back from both commits at once over both parents, always taking the
+ *  commit with the largest generation number next, so each commit is
+ *  visited at most once and the walk stops as soon as nothing but
+ *  already-found common ancestors is left to visit.
+ *  @author Brian Unggul
+ */
+class MergeBase {
+
+    /** Flag for commits reachable from the first commit. */
+    private static final int FROM_ONE = 1;
+
+    /** Flag for commits reachable from the second commit. */
+    private static final int FROM_TWO = 2;
+
+    /** Flag for commits reachable from both commits. */
+    private static final int COMMON = FROM_ONE | FROM_TWO;
+
+    /** Flag for commits that are ancestors of a common ancestor. */
+    private static final int STALE = 4;
+
+    /** Interface for the parent and generation data of the commits
+     *  the walk runs over. */
+    interface Ancestry {
+        /** Returns the positions of the parents of the commit at
+         *  position POS (an empty array for the initial commit). */
+        int[] parents(int pos);
+
+        /** Returns the generation number of the commit at position
+         *  POS: 1 for the initial commit, and one more than the largest
+         *  generation of its parents for every other commit. */
+        int generation(int pos);
+    }
+
+    /** Method to get the best common ancestor of two commits: the
+     *  common ancestor with the largest generation number. When a
+     *  criss-cross merge leaves more than one best common ancestor,
+     *  the one with the smallest position is picked so the result is
+     *  always the same.
+     * @param graph The parent and generation data of the commits
+     * @param one The position of the first commit
+     * @param two The position of the second commit
+     * @return The position of the split point, or -1 if there is none
+     */
+    static int find(Ancestry graph, int one, int two) {
+        int best = -1;
+        int bestGen = 0;
+        for (int pos : findAll(graph, one, two)) {
+            int gen = graph.generation(pos);
+            if (best == -1 || gen > bestGen
+                    || (gen == bestGen && pos < best)) {
+                best = pos;
+                bestGen = gen;
+            }
+        }
+        return best;
+    }
+
+    /** Method to get every common ancestor of two commits that is
+     *  not itself an ancestor of another common ancestor. Because a
+     *  parent always has a smaller generation than its children, a
+     *  commit's flags are final by the time it leaves the queue, so
+     *  every commit is queued at most once.
+     * @param graph The parent and generation data of the commits
+     * @param one The position of the first commit
+     * @param two The position of the second commit
+     * @return The list of positions of the best common ancestors
+     */
+    static ArrayList<Integer> findAll(Ancestry graph, int one, int two) {
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        ArrayList<Integer> result = new ArrayList<>();
+        flags.put(one, FROM_ONE);
+        queue.add(new Entry(one, graph.generation(one)));
+        if (two == one) {
+            flags.put(one, COMMON);
+        } else {
+            flags.put(two, FROM_TWO);
+            queue.add(new Entry(two, graph.generation(two)));
+        }
+        int active = queue.size();
+        while (active > 0) {
+            int id = queue.poll().id;
+            int flag = flags.get(id);
+            if ((flag & STALE) == 0) {
+                active -= 1;
+                if ((flag & COMMON) == COMMON) {
+                    result.add(id);
+                    flag |= STALE;
+                    flags.put(id, flag);
+                }
+            }
+            for (int parent : graph.parents(id)) {
+                Integer old = flags.get(parent);
+                if (old == null) {
+                    flags.put(parent, flag);
+                    queue.add(new Entry(parent, graph.generation(parent)));
+                    if ((flag & STALE) == 0) {
+                        active += 1;
+                    }
+                } else if ((old | flag) != old) {
+                    if ((old & STALE) == 0 && (flag & STALE) != 0) {
+                        active -= 1;
+                    }
+                    flags.put(parent, old | flag);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** An entry of the walk's queue; entries with a larger generation
+     *  come first. */
+    private static class Entry implements Comparable<Entry> {
+
+        /** The position of the commit. */
+        private final int id;
+
+        /** The generation number of the commit. */
+        private final int generation;
+
+        /** Constructor for an entry.
+         * @param pos The position of the commit
+         * @param gen The generation number of the commit */
+        Entry(int pos, int gen) {
+            id = pos;
+            generation = gen;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Integer.compare(other.generation, generation);
+        }
+    }
+
+}
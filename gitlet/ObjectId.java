@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+
+/** ObjectId class that holds the 20-byte sha1 of a commit or blob in
+ *  two longs and an int instead of a 40-character String, so an id
+ *  takes a third of the memory and is compared and hashed a word at a
+ *  time. Ids are ordered by their bytes, which is also the order of
+ *  their hexadecimal names.
+ *  @author Brian Unggul
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** The size of an id in bytes. */
+    static final int BYTES = 20;
+
+    /** The hexadecimal digits, by value. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Bytes 0 to 7 of the id. */
+    private final long first;
+
+    /** Bytes 8 to 15 of the id. */
+    private final long second;
+
+    /** Bytes 16 to 19 of the id. */
+    private final int third;
+
+    /** Constructor for the id with the specified words.
+     * @param word1 Bytes 0 to 7
+     * @param word2 Bytes 8 to 15
+     * @param word3 Bytes 16 to 19 */
+    private ObjectId(long word1, long word2, int word3) {
+        first = word1;
+        second = word2;
+        third = word3;
+    }
+
+    /** Method to check if a string is the hexadecimal name of an id.
+     * @param hex The string
+     * @return Whether or not it is 40 hexadecimal digits */
+    static boolean isId(String hex) {
+        if (hex == null || hex.length() != 2 * BYTES) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i += 1) {
+            if (Character.digit(hex.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Method to get the id with the specified hexadecimal name.
+     * @param hex The 40 hexadecimal digits of the id
+     * @return The id */
+    static ObjectId fromHex(String hex) {
+        if (!isId(hex)) {
+            throw Utils.error("Invalid id %s.", hex);
+        }
+        return new ObjectId(parse(hex, 0, 16), parse(hex, 16, 16),
+                (int) parse(hex, 32, 8));
+    }
+
+    /** Helper method for fromHex() that reads some hexadecimal
+     *  digits as a number.
+     * @param hex The digits
+     * @param start The position of the first digit to be read
+     * @param count The number of digits to be read
+     * @return The number */
+    private static long parse(String hex, int start, int count) {
+        long value = 0;
+        for (int i = start; i < start + count; i += 1) {
+            value = value << 4 | Character.digit(hex.charAt(i), 16);
+        }
+        return value;
+    }
+
+    /** Method to read an id from a buffer.
+     * @param buf The buffer
+     * @param pos The offset of the id in the buffer
+     * @return The id */
+    static ObjectId read(ByteBuffer buf, int pos) {
+        return new ObjectId(buf.getLong(pos), buf.getLong(pos + 8),
+                buf.getInt(pos + 16));
+    }
+
+    /** Method to get the id made of some bytes.
+     * @param bytes The bytes
+     * @param pos The offset of the id in BYTES
+     * @return The id */
+    static ObjectId fromBytes(byte[] bytes, int pos) {
+        return read(ByteBuffer.wrap(bytes), pos);
+    }
+
+    /** Method to write the bytes of this id into a buffer, at its
+     *  position.
+     * @param buf The buffer */
+    void write(ByteBuffer buf) {
+        buf.putLong(first).putLong(second).putInt(third);
+    }
+
+    /** Method to get the bytes of this id.
+     * @return The 20 bytes */
+    byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(BYTES);
+        write(buf);
+        return buf.array();
+    }
+
+    /** Method to get the hexadecimal name of this id, by which it is
+     *  shown and stored in text.
+     * @return The 40 hexadecimal digits */
+    String name() {
+        char[] str = new char[2 * BYTES];
+        hex(first, str, 0, 16);
+        hex(second, str, 16, 16);
+        hex(third, str, 32, 8);
+        return new String(str);
+    }
+
+    /** Helper method for name() that writes the hexadecimal digits of
+     *  a word.
+     * @param word The word
+     * @param str The digits of the name
+     * @param start The position of the first digit of the word
+     * @param count The number of digits of the word */
+    private static void hex(long word, char[] str, int start, int count) {
+        for (int i = start + count - 1; i >= start; i -= 1) {
+            str[i] = HEX[(int) (word & 0xf)];
+            word >>>= 4;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return first == other.first && second == other.second
+                && third == other.third;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (first >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(first, other.first);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(second, other.second);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(third, other.third);
+        }
+        return cmp;
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+}
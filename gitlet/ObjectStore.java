@@ -0,0 +1,1130 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** ObjectStore class that keeps every commit and every ref of a
+ *  .gitlet directory in its own file, so that a command only reads
+ *  the objects it actually touches instead of the whole history.
+ *  Blobs live, compressed, in [sha1 of the blob], commits live in
+ *  commits/[first two chars of id]/[rest of id], the nodes of the
+ *  trees of tracked files live in trees/[first two chars of
+ *  id]/[rest of id],
+ *  branches live in refs/[branch name], the name of the current
+ *  branch lives in HEAD, the parent/child edges used by the
+ *  committree are appended to the file tree, and the shape of the
+ *  history is kept in the file commit-graph. The gc command moves
+ *  loose blobs into a packfile, whose name is kept in packs; blobs
+ *  are read from whichever of the two holds them. A store made with
+ *  init --chunked keeps large files as lists of chunks, which live,
+ *  compressed, in chunks/[first two chars of sha1]/[rest of sha1] and
+ *  are shared by every blob that has them. Every update of a
+ *  ref is first appended to the file journal. The hash function the
+ *  ids are computed with is named in the file hash. Files are written
+ *  to a temporary file and renamed into place, so a crash never
+ *  leaves one half written.
+ *  @author Brian Unggul
+ */
+class ObjectStore {
+
+    /** The number of characters of an id used as the fan-out
+     *  directory name of a commit file. */
+    private static final int FANOUT = 2;
+
+    /** The first bytes of a compressed blob file, which are followed
+     *  by the zlib-compressed contents. Blob files that do not start
+     *  with them were written before blobs were compressed and are
+     *  read as they are. */
+    private static final byte[] COMPRESSED = {0, 'G', 'L', 'Z'};
+
+    /** The magic number of a chunked blob file, whose first bytes are
+     *  {0, 'G', 'L', 'C'}; it holds the list of the chunks of the blob
+     *  in the format of Codec instead of the contents. */
+    private static final int CHUNKED = 0x00474c43;
+
+    /** The version of the encoding of a chunked blob file. */
+    private static final int CHUNKED_VERSION = 1;
+
+    /** The size in bytes from which files are stored in chunks, in a
+     *  store that chunks files. */
+    static final long CHUNK_THRESHOLD = 1 << 20;
+
+    /** The number of bytes read from the end of a file of lines to
+     *  find its last line. */
+    private static final int TAIL = 4096;
+
+    /** The size in bytes above which the journal is started over. */
+    private static final long JOURNAL_MAX = 1 << 16;
+
+    /** The .gitlet directory this store reads from and writes to. */
+    private final File dir;
+
+    /** The commits that have already been read from this store,
+     *  keyed by their sha1. */
+    private final HashMap<ObjectId, Commit> cache;
+
+    /** One instance of every tree node that has been read from or
+     *  made for this store, keyed by its id. Nodes made for a new
+     *  commit stay here until the commit is written. */
+    private final HashMap<String, Tree> trees;
+
+    /** The commit graph of this store, which is only opened when it
+     *  is needed. */
+    private CommitGraph graph;
+
+    /** The packfile of this store, which is only opened when a blob
+     *  is not found loose. */
+    private Pack pack;
+
+    /** Whether or not this store keeps large files in chunks, or null
+     *  if that has not been read yet. */
+    private Boolean chunking;
+
+    /** Constructor for a store rooted at the .gitlet directory DIR.
+     * @param gitletDir The .gitlet directory of the repository */
+    ObjectStore(File gitletDir) {
+        dir = gitletDir;
+        cache = new HashMap<>();
+        trees = new HashMap<>();
+    }
+
+    /** Method to get the .gitlet directory of this store.
+     * @return The .gitlet directory */
+    File getDir() {
+        return dir;
+    }
+
+    /** Method to create the directories used by this store, and
+     *  record the hash function its objects are named with and
+     *  whether or not it keeps large files in chunks.
+     * @param algorithm The hash function of the new store
+     * @param chunked Whether or not large files are kept in chunks */
+    void init(HashAlgorithm algorithm, boolean chunked) {
+        Utils.join(dir, "commits").mkdirs();
+        Utils.join(dir, "trees").mkdirs();
+        Utils.join(dir, "refs").mkdirs();
+        Utils.writeAtomically(Utils.join(dir, "hash"),
+                algorithm.getName().getBytes(StandardCharsets.UTF_8));
+        if (chunked) {
+            Utils.join(dir, "chunks").mkdirs();
+        }
+        chunking = chunked;
+    }
+
+    /** Method to check if this store keeps files of CHUNK_THRESHOLD
+     *  bytes or more in chunks, which is the case if it was made with
+     *  init --chunked and so has a chunks directory. Any store can
+     *  read chunked blobs, such as those fetched from a store that
+     *  makes them.
+     * @return Whether or not large files are kept in chunks */
+    boolean isChunking() {
+        if (chunking == null) {
+            chunking = Utils.join(dir, "chunks").isDirectory();
+        }
+        return chunking;
+    }
+
+    /** Method to get the hash function the objects of this store are
+     *  named with, which is kept in .gitlet/hash. Stores made before
+     *  that file was introduced use SHA-1.
+     * @return The hash function */
+    HashAlgorithm hashAlgorithm() {
+        File file = Utils.join(dir, "hash");
+        if (!file.isFile()) {
+            return HashAlgorithm.SHA1;
+        }
+        String name = Utils.readContentsAsString(file).trim();
+        HashAlgorithm algorithm = HashAlgorithm.forName(name);
+        if (algorithm == null) {
+            throw Utils.error("Unknown hash algorithm %s.", name);
+        }
+        return algorithm;
+    }
+
+    /** Method to get the file in which the blob with the specified
+     *  sha1 is stored.
+     * @param sha1 The sha1 of the blob
+     * @return The file of the blob
+     */
+    File blobFile(String sha1) {
+        return Utils.join(dir, sha1);
+    }
+
+    /** Method to write the compressed contents of a file into a
+     *  blob (or staged blob) file. The contents are streamed, so
+     *  memory use does not grow with the size of the file.
+     * @param source The file to be compressed
+     * @param dest The blob file to be written
+     */
+    static void writeBlob(File source, File dest) {
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            writeBlob(in, dest);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to write the compressed contents of a stream into a
+     *  blob file. The blob is written to a temporary file, forced to
+     *  disk and then renamed into place, so a blob file is never seen
+     *  half written.
+     * @param in The stream to be compressed
+     * @param dest The blob file to be written
+     */
+    static void writeBlob(InputStream in, File dest) {
+        File temp = Utils.tempFile(dest);
+        try (FileOutputStream out = new FileOutputStream(temp);
+             DeflaterOutputStream deflater = new DeflaterOutputStream(
+                     new BufferedOutputStream(out, Utils.BUFFER_SIZE))) {
+            out.write(COMPRESSED);
+            transfer(in, deflater);
+            deflater.finish();
+            deflater.flush();
+            out.getFD().sync();
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.moveAtomically(temp, dest);
+    }
+
+    /** Method to write a working file as a staged blob. A file of
+     *  CHUNK_THRESHOLD bytes or more, in a store that chunks files, is
+     *  cut into chunks by Chunker; chunks the store does not have yet
+     *  are written to it compressed, and the staged blob only lists
+     *  the chunks. Any other file is compressed as a whole.
+     * @param source The working file
+     * @param dest The staged blob file to be written
+     */
+    void stage(File source, File dest) {
+        if (!isChunking() || source.length() < CHUNK_THRESHOLD) {
+            writeBlob(source, dest);
+            return;
+        }
+        Codec.Output out = new Codec.Output(CHUNKED, CHUNKED_VERSION);
+        ArrayList<ObjectId> ids = new ArrayList<>();
+        ArrayList<Integer> lengths = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                String id = Utils.sha1(chunk);
+                File file = chunkFile(id);
+                if (!file.isFile()) {
+                    file.getParentFile().mkdirs();
+                    writeBlob(new ByteArrayInputStream(chunk), file);
+                }
+                ids.add(ObjectId.fromHex(id));
+                lengths.add(chunk.length);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        out.varint(ids.size());
+        for (int i = 0; i < ids.size(); i += 1) {
+            out.id(ids.get(i));
+            out.varint(lengths.get(i));
+        }
+        Utils.writeAtomically(dest, out.toByteArray());
+    }
+
+    /** Method to get the file in which the chunk with the specified
+     *  sha1 is stored.
+     * @param sha1 The sha1 of the chunk
+     * @return The file of the chunk
+     */
+    private File chunkFile(String sha1) {
+        return Utils.join(dir, "chunks", sha1.substring(0, FANOUT),
+                sha1.substring(FANOUT));
+    }
+
+    /** Method to get the chunks of a blob file, if it is chunked.
+     * @param file The blob file
+     * @return The sha1s of its chunks, in order, or null if the file
+     * holds the contents of the blob itself
+     */
+    private static List<String> chunks(File file) {
+        byte[] head = new byte[COMPRESSED.length];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            if (in.readNBytes(head, 0, head.length) < head.length
+                    || ByteBuffer.wrap(head).getInt() != CHUNKED) {
+                return null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Codec.Input in = new Codec.Input(Utils.readContents(file),
+                CHUNKED, CHUNKED_VERSION);
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = in.count(); i > 0; i -= 1) {
+            ids.add(in.id().name());
+            in.varint();
+        }
+        in.end();
+        return ids;
+    }
+
+    /** Method to get the packfile of this store. Blobs may be read
+     *  by several threads at once, so the pack is opened by one
+     *  thread at a time.
+     * @return The pack, or null if this store has no packfile */
+    private synchronized Pack pack() {
+        if (pack == null) {
+            String name = packName();
+            if (name != null) {
+                pack = new Pack(Utils.join(dir, name),
+                        Utils.join(dir, name + ".idx"));
+            }
+        }
+        return pack;
+    }
+
+    /** Method to get the file name of the current packfile, which is
+     *  kept in .gitlet/packs. Stores packed before the packs file was
+     *  introduced have their packfile in .gitlet/pack.
+     * @return The name of the packfile, or null if there is none */
+    private String packName() {
+        File packs = Utils.join(dir, "packs");
+        if (packs.isFile()) {
+            return Utils.readContentsAsString(packs).trim();
+        }
+        return Utils.join(dir, "pack.idx").isFile() ? "pack" : null;
+    }
+
+    /** Method to check if the blob with the specified sha1 is in this
+     *  store, either loose or packed.
+     * @param sha1 The sha1 of the blob
+     * @return Whether or not the blob exists
+     */
+    boolean hasBlob(String sha1) {
+        return blobFile(sha1).isFile()
+                || (pack() != null && pack().contains(sha1));
+    }
+
+    /** Method to open the contents of a blob for reading. Compressed
+     *  blobs are decompressed as they are read. Loose blobs are looked
+     *  for first, then the packfile.
+     * @param sha1 The sha1 of the blob
+     * @return The stream of the blob's contents
+     */
+    InputStream openBlob(String sha1) {
+        if (!blobFile(sha1).isFile() && pack() != null
+                && pack().contains(sha1)) {
+            return pack().open(sha1);
+        }
+        return openBlobFile(blobFile(sha1));
+    }
+
+    /** Method to open the contents of a loose (or staged) blob file
+     *  for reading, decompressing them if they are compressed. The
+     *  contents of a chunked blob are streamed one chunk after the
+     *  other, each chunk file being opened only when the one before
+     *  it has been read.
+     * @param file The blob file
+     * @return The stream of the blob's contents
+     */
+    InputStream openBlobFile(File file) {
+        List<String> ids = chunks(file);
+        if (ids != null) {
+            Iterator<String> iter = ids.iterator();
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return iter.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    return openLoose(chunkFile(iter.next()));
+                }
+            });
+        }
+        return openLoose(file);
+    }
+
+    /** Helper method for openBlobFile() that opens a blob file that
+     *  holds the contents of the blob, compressed or not.
+     * @param file The blob file
+     * @return The stream of the blob's contents
+     */
+    private static InputStream openLoose(File file) {
+        try {
+            PushbackInputStream in = new PushbackInputStream(
+                    new BufferedInputStream(Files.newInputStream(
+                            file.toPath()), Utils.BUFFER_SIZE),
+                    COMPRESSED.length);
+            byte[] head = new byte[COMPRESSED.length];
+            int n = in.readNBytes(head, 0, head.length);
+            if (n == head.length && Arrays.equals(head, COMPRESSED)) {
+                return new InflaterInputStream(in);
+            }
+            in.unread(head, 0, n);
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to get the whole contents of a blob.
+     * @param sha1 The sha1 of the blob
+     * @return The contents of the blob
+     */
+    byte[] readBlob(String sha1) {
+        if (!blobFile(sha1).isFile() && pack() != null
+                && pack().contains(sha1)) {
+            return pack().read(sha1);
+        }
+        try (InputStream in = openBlob(sha1)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to write the contents of a blob into a working file,
+     *  creating or overwriting it, and the directories above it, as
+     *  needed.
+     * @param sha1 The sha1 of the blob
+     * @param dest The working file
+     */
+    void readBlobTo(String sha1, File dest) {
+        File parent = dest.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (InputStream in = openBlob(sha1);
+             OutputStream out = Files.newOutputStream(dest.toPath())) {
+            transfer(in, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to copy everything from a stream to another one
+     *  through a fixed-size buffer.
+     * @param in The stream to be read
+     * @param out The stream to be written
+     */
+    private static void transfer(InputStream in, OutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[Utils.BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /** Method to get the file in which the commit with the
+     *  specified id is stored.
+     * @param id The full sha1 of the commit
+     * @return The file of the commit
+     */
+    private File commitFile(ObjectId id) {
+        String name = id.name();
+        return Utils.join(dir, "commits", name.substring(0, FANOUT),
+                name.substring(FANOUT));
+    }
+
+    /** Method to check if the commit with the specified id is
+     *  stored in this store.
+     * @param id The full sha1 of the commit
+     * @return Whether or not the commit exists
+     */
+    boolean hasCommit(ObjectId id) {
+        return cache.containsKey(id) || commitFile(id).isFile();
+    }
+
+    /** Method to read the commit with the specified id. The commit
+     *  is only read from disk the first time it is asked for.
+     * @param id The full sha1 of the commit
+     * @return The commit, or null if it does not exist
+     */
+    Commit readCommit(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        Commit commit = cache.get(id);
+        if (commit == null) {
+            File file = commitFile(id);
+            if (!file.isFile()) {
+                return null;
+            }
+            commit = Commit.decode(Utils.readContents(file));
+            if (!commit.getId().equals(id)) {
+                throw Utils.error("Corrupt commit %s.", id);
+            }
+            commit.setStore(this);
+            cache.put(id, commit);
+        }
+        return commit;
+    }
+
+    /** Method to read the commit with the specified id, given in
+     *  hexadecimal.
+     * @param id The full sha1 of the commit
+     * @return The commit, or null if it does not exist
+     */
+    Commit readCommit(String id) {
+        return ObjectId.isId(id) ? readCommit(ObjectId.fromHex(id)) : null;
+    }
+
+    /** Method to get the file in which the tree node with the
+     *  specified id is stored.
+     * @param id The id of the node
+     * @return The file of the node
+     */
+    private File treeFile(String id) {
+        return Utils.join(dir, "trees", id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Method to get the one instance of a tree node this store
+     *  keeps, so that equal nodes are never held twice.
+     * @param tree A node that may equal one seen before
+     * @return The instance of the node kept by this store
+     */
+    Tree intern(Tree tree) {
+        Tree old = trees.putIfAbsent(tree.getId(), tree);
+        return old == null ? tree : old;
+    }
+
+    /** Method to read the tree node with the specified id.
+     * @param id The id of the node
+     * @return The node
+     */
+    Tree readTree(String id) {
+        Tree tree = trees.get(id);
+        if (tree == null) {
+            if (id.equals(Tree.emptyId())) {
+                return Tree.empty(this);
+            }
+            File file = treeFile(id);
+            if (!file.isFile()) {
+                throw Utils.error("Missing tree %s.", id);
+            }
+            tree = Tree.parse(this, Utils.readContentsAsString(file));
+        }
+        return tree;
+    }
+
+    /** Method to write a tree node and every node below it that is
+     *  not in this store yet. Since a node is only written after its
+     *  children, the walk stops at the first node already on disk, so
+     *  only the nodes new to this commit are visited.
+     * @param id The id of the node
+     */
+    private void writeTree(String id) {
+        File file = treeFile(id);
+        if (file.isFile()) {
+            return;
+        }
+        Tree tree = readTree(id);
+        for (String child : tree.childIDs()) {
+            writeTree(child);
+        }
+        file.getParentFile().mkdirs();
+        Utils.writeAtomically(file,
+                tree.text().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Method to copy a tree node and every node below it that is
+     *  missing from this store from another store, along with the
+     *  blobs they point to.
+     * @param source The store to copy from
+     * @param id The id of the node
+     */
+    private void copyTree(ObjectStore source, String id) {
+        if (treeFile(id).isFile()) {
+            return;
+        }
+        Tree tree = source.readTree(id);
+        for (String sha1 : tree.blobIDs()) {
+            copyBlob(source, sha1);
+        }
+        for (String child : tree.childIDs()) {
+            copyTree(source, child);
+        }
+        File file = treeFile(id);
+        file.getParentFile().mkdirs();
+        Utils.writeAtomically(file,
+                tree.text().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Method to get the commit graph of this store, building it
+     *  from the commits reachable from the refs if the store does not
+     *  have one yet.
+     * @return The commit graph */
+    CommitGraph graph() {
+        if (graph == null) {
+            File file = Utils.join(dir, "commit-graph");
+            boolean exists = file.isFile();
+            graph = new CommitGraph(file);
+            if (!exists) {
+                for (String name : refNames()) {
+                    addToGraph(readRef(name));
+                }
+            }
+        }
+        return graph;
+    }
+
+    /** Helper method for graph() that adds a commit and all of its
+     *  ancestors to the commit graph, parents before children.
+     * @param headID The id of the commit */
+    private void addToGraph(ObjectId headID) {
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        stack.push(headID);
+        while (!stack.isEmpty()) {
+            Commit commit = readCommit(stack.peek());
+            boolean ready = true;
+            for (ObjectId parent : commit.getParentIds()) {
+                if (!graph.contains(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                graph.add(commit);
+                stack.pop();
+            }
+        }
+    }
+
+    /** Method to get the id of the split point of two commits.
+     * @param one The id of the first commit
+     * @param two The id of the second commit
+     * @return The id of the split point, or null if there is none */
+    ObjectId mergeBase(ObjectId one, ObjectId two) {
+        CommitGraph cg = graph();
+        int base = MergeBase.find(cg, cg.indexOf(one), cg.indexOf(two));
+        return base == CommitGraph.NONE ? null : cg.id(base);
+    }
+
+    /** Method to check if a commit is an ancestor of (or the same as)
+     *  another one.
+     * @param ancestor The id of the possible ancestor
+     * @param descendant The id of the possible descendant
+     * @return Whether or not ancestor is reachable from descendant */
+    boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        CommitGraph cg = graph();
+        int pos = cg.indexOf(ancestor);
+        return pos != CommitGraph.NONE
+                && cg.isAncestor(pos, cg.indexOf(descendant));
+    }
+
+    /** Method to write a commit into this store and record the edge
+     *  between it and its first parent. Commits that already exist
+     *  are left untouched.
+     * @param commit The commit to be written
+     */
+    void writeCommit(Commit commit) {
+        ObjectId id = commit.getId();
+        if (hasCommit(id)) {
+            return;
+        }
+        storeCommit(commit);
+        commit.setStore(this);
+        cache.put(id, commit);
+    }
+
+    /** Helper method that writes the file of a commit and appends
+     *  its edge to the committree. The trees are written before the
+     *  commit, and the commit before its edge and graph record, so
+     *  whatever a crash leaves behind never points at a missing
+     *  object. A parent whose graph record was lost that way is added
+     *  to the graph again first.
+     * @param commit The commit to be written
+     */
+    private void storeCommit(Commit commit) {
+        ObjectId id = commit.getId();
+        File file = commitFile(id);
+        file.getParentFile().mkdirs();
+        writeTree(commit.getTreeId());
+        Utils.writeAtomically(file, commit.encode());
+        for (ObjectId parent : commit.getParentIds()) {
+            if (!graph().contains(parent)) {
+                addToGraph(parent);
+            }
+        }
+        graph().add(commit);
+        String edge = commit.hasParent1()
+                ? commit.getParent1Id().name() + " " + id.name() : id.name();
+        appendLine(Utils.join(dir, "tree"), edge);
+    }
+
+    /** Method to copy the commit with the specified id, and every
+     *  ancestor of it that is missing from this store, from another
+     *  store, along with the trees and blobs they point to. Ancestors are
+     *  written before their descendants, and the walk stops at
+     *  commits this store already has.
+     * @param source The store to copy from
+     * @param headID The id of the newest commit to be copied
+     */
+    void copyCommits(ObjectStore source, ObjectId headID) {
+        ArrayList<Commit> missing = new ArrayList<>();
+        HashSet<ObjectId> seen = new HashSet<>();
+        ArrayDeque<ObjectId> queue = new ArrayDeque<>();
+        queue.add(headID);
+        while (!queue.isEmpty()) {
+            ObjectId id = queue.poll();
+            if (!seen.add(id) || hasCommit(id)) {
+                continue;
+            }
+            Commit commit = source.readCommit(id);
+            missing.add(commit);
+            if (commit.hasParent1()) {
+                queue.add(commit.getParent1Id());
+            }
+            if (commit.hasParent2()) {
+                queue.add(commit.getParent2Id());
+            }
+        }
+        for (int i = missing.size() - 1; i >= 0; i -= 1) {
+            Commit commit = missing.get(i);
+            copyTree(source, commit.getTreeId());
+            storeCommit(commit);
+        }
+    }
+
+    /** Helper method for copyCommits() that copies a blob from
+     *  another store, unless this store already has it. Loose blobs
+     *  are copied as they are; packed ones are compressed again.
+     * @param source The store to copy from
+     * @param sha1 The sha1 of the blob
+     */
+    private void copyBlob(ObjectStore source, String sha1) {
+        if (hasBlob(sha1)) {
+            return;
+        }
+        File file = source.blobFile(sha1);
+        List<String> ids = file.isFile() ? chunks(file) : null;
+        if (ids != null) {
+            for (String id : ids) {
+                if (!chunkFile(id).isFile()) {
+                    chunkFile(id).getParentFile().mkdirs();
+                    copyFile(source.chunkFile(id), chunkFile(id));
+                }
+            }
+        }
+        if (file.isFile()) {
+            copyFile(file, blobFile(sha1));
+        } else {
+            try (InputStream in = source.openBlob(sha1)) {
+                writeBlob(in, blobFile(sha1));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Method to pack every blob of this store, loose or already
+     *  packed, into a new packfile, then delete the loose blobs. The
+     *  history is walked from the oldest commit to the newest, and
+     *  each version of a file a commit changed is delta-encoded
+     *  against the version of the same file in its first parent, as
+     *  long as that keeps the chain of deltas no longer than
+     *  Pack.MAX_DEPTH. Only the files that differ from the first
+     *  parent are looked at, so unchanged directories are skipped by
+     *  the ids of their trees. The new packfile is
+     *  written next to the old one under a name of its own, and only
+     *  once it is on disk is .gitlet/packs pointed at it, so a crash
+     *  leaves either the old pack or the new one in use. The old pack
+     *  and the loose blobs are deleted after that.
+     * @return The number of blobs in the new packfile
+     */
+    int repack() {
+        LinkedHashMap<String, String> bases = new LinkedHashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        CommitGraph cg = graph();
+        for (int pos = 0; pos < cg.size(); pos += 1) {
+            Tree tree = readCommit(cg.id(pos)).getTree();
+            int parent = cg.parent1(pos);
+            Tree parentTree = parent == CommitGraph.NONE ? Tree.empty(this)
+                    : readCommit(cg.id(parent)).getTree();
+            for (String[] change : Tree.diff(parentTree, tree).values()) {
+                String prev = change[0];
+                String id = change[1];
+                if (id == null || bases.containsKey(id) || !hasBlob(id)
+                        || isChunked(id)) {
+                    continue;
+                }
+                if (prev != null && depths.containsKey(prev)
+                        && depths.get(prev) < Pack.MAX_DEPTH) {
+                    bases.put(id, prev);
+                    depths.put(id, depths.get(prev) + 1);
+                } else {
+                    bases.put(id, null);
+                    depths.put(id, 0);
+                }
+            }
+        }
+        for (String id : looseBlobs()) {
+            bases.putIfAbsent(id, null);
+        }
+        if (pack() != null) {
+            for (String id : pack().ids()) {
+                bases.putIfAbsent(id, null);
+            }
+        }
+        String oldName = packName();
+        File newPack = Utils.join(dir, "pack.tmp");
+        File newIndex = Utils.join(dir, "pack.idx.tmp");
+        Pack.write(newPack, newIndex, new ArrayList<>(bases.keySet()),
+                bases, this);
+        String name = "pack-" + Utils.sha1(newIndex);
+        Utils.moveAtomically(newPack, Utils.join(dir, name));
+        Utils.moveAtomically(newIndex, Utils.join(dir, name + ".idx"));
+        Utils.writeAtomically(Utils.join(dir, "packs"),
+                name.getBytes(StandardCharsets.UTF_8));
+        pack = null;
+        if (oldName != null && !oldName.equals(name)) {
+            Utils.join(dir, oldName).delete();
+            Utils.join(dir, oldName + ".idx").delete();
+        }
+        for (String id : looseBlobs()) {
+            blobFile(id).delete();
+        }
+        return bases.size();
+    }
+
+    /** Helper method for repack() that checks if a blob is kept in
+     *  chunks, which are already stored once for all the blobs that
+     *  share them, so it is left out of the packfile.
+     * @param sha1 The sha1 of the blob
+     * @return Whether or not the blob is a loose chunked blob
+     */
+    private boolean isChunked(String sha1) {
+        File file = blobFile(sha1);
+        return file.isFile() && chunks(file) != null;
+    }
+
+    /** Helper method for repack() that lists the loose blobs of this
+     *  store that are not kept in chunks.
+     * @return The sha1s of the loose blobs
+     */
+    private List<String> looseBlobs() {
+        ArrayList<String> ids = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.matches("[0-9a-f]{40}") && !isChunked(name)) {
+                    ids.add(name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Method to copy a stored file as it is, without decompressing
+     *  it. The bytes are handed from one channel to the other with
+     *  transferTo, so the operating system can copy them without
+     *  passing them through the heap. Like every other store write,
+     *  the copy goes to a temporary file that is forced to disk and
+     *  then renamed into place.
+     * @param source The file to be copied
+     * @param dest The file to be written
+     */
+    static void copyFile(File source, File dest) {
+        File temp = Utils.tempFile(dest);
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp.toPath(),
+                     StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.moveAtomically(temp, dest);
+    }
+
+    /** Method to move a staged blob into this store with a single
+     *  rename, so the blob is never copied and is either wholly in
+     *  the store or not there at all. If the store already has the
+     *  blob, the staged file is just deleted.
+     * @param staged The staged blob file, named by its sha1
+     */
+    void moveStaged(File staged) {
+        String sha1 = staged.getName();
+        if (hasBlob(sha1)) {
+            staged.delete();
+            return;
+        }
+        Utils.moveAtomically(staged, blobFile(sha1));
+    }
+
+    /** Method to get the edges of the committree, in the order in
+     *  which they were written. Each edge is either "PARENT CHILD",
+     *  or just "ROOT" for the initial commit. A last line cut short by
+     *  a crash is left out.
+     * @return The list of edges
+     */
+    List<String> readEdges() {
+        File file = Utils.join(dir, "tree");
+        if (!file.isFile()) {
+            return new ArrayList<>();
+        }
+        String text = Utils.readContentsAsString(file);
+        text = text.substring(0, text.lastIndexOf('\n') + 1);
+        if (text.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(text.split("\n")));
+    }
+
+    /** Method to append a line to the specified file and force it to
+     *  disk. A last line cut short by an earlier crash is cut off
+     *  first, so every line of the file stays whole.
+     * @param file The file to be appended to
+     * @param line The line to be appended
+     */
+    private static void appendLine(File file, String line) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(wholeLength(raf));
+            raf.seek(raf.length());
+            raf.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            raf.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to get the length of the part of a file of lines that
+     *  ends with a whole line. Only the last TAIL bytes are read, which
+     *  is more than any line of the files it is used on.
+     * @param raf The file
+     * @return The length up to and including the last newline
+     */
+    private static long wholeLength(RandomAccessFile raf)
+            throws IOException {
+        long end = raf.length();
+        byte[] tail = new byte[(int) Math.min(end, TAIL)];
+        raf.seek(end - tail.length);
+        raf.readFully(tail);
+        for (int i = tail.length - 1; i >= 0; i -= 1) {
+            if (tail[i] == '\n') {
+                return end - tail.length + i + 1;
+            }
+        }
+        return tail.length < end ? end : 0;
+    }
+
+    /** Method to get the last whole line of a file of lines.
+     * @param file The file
+     * @return The last line, or null if the file has none
+     */
+    private static String lastLine(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long end = wholeLength(raf) - 1;
+            if (end <= 0) {
+                return null;
+            }
+            byte[] tail = new byte[(int) Math.min(end, TAIL)];
+            raf.seek(end - tail.length);
+            raf.readFully(tail);
+            int start = tail.length;
+            while (start > 0 && tail[start - 1] != '\n') {
+                start -= 1;
+            }
+            return new String(tail, start, tail.length - start,
+                    StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to get the file in which a ref is stored.
+     * @param name The name of the ref
+     * @return The file of the ref
+     */
+    private File refFile(String name) {
+        return Utils.join(dir, "refs", name);
+    }
+
+    /** Method to check if a ref with the specified name exists.
+     * @param name The name of the ref
+     * @return Whether or not the ref exists
+     */
+    boolean hasRef(String name) {
+        return refFile(name).isFile();
+    }
+
+    /** Method to get the commit id a ref is pointing to.
+     * @param name The name of the ref
+     * @return The commit id, or null if the ref does not exist
+     */
+    ObjectId readRef(String name) {
+        File file = refFile(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        return ObjectId.fromHex(Utils.readContentsAsString(file).trim());
+    }
+
+    /** Method to get the commit a ref is pointing to.
+     * @param name The name of the ref
+     * @return The commit, or null if the ref does not exist
+     */
+    Commit readRefCommit(String name) {
+        return readCommit(readRef(name));
+    }
+
+    /** Method to point a ref at the specified commit. The update is
+     *  recorded in the journal before the ref file is replaced.
+     * @param name The name of the ref
+     * @param id The commit id
+     */
+    void writeRef(String name, ObjectId id) {
+        File file = refFile(name);
+        file.getParentFile().mkdirs();
+        journal(name, readRef(name), id);
+        Utils.writeAtomically(file,
+                id.name().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Method to delete a ref. The deletion is recorded in the journal
+     *  before the ref file is deleted.
+     * @param name The name of the ref
+     */
+    void deleteRef(String name) {
+        journal(name, readRef(name), null);
+        refFile(name).delete();
+    }
+
+    /** Method to record a ref update in .gitlet/journal, an
+     *  append-only file with one "OLD NEW NAME" line per update, where
+     *  a missing ref is written as "-". The line is forced to disk
+     *  before the ref itself is touched. Only the last line is ever
+     *  needed, so once the journal grows past JOURNAL_MAX bytes it is
+     *  started over with just the new line.
+     * @param name The name of the ref
+     * @param oldID The commit id the ref points to now, or null
+     * @param newID The commit id the ref will point to, or null
+     */
+    private void journal(String name, ObjectId oldID, ObjectId newID) {
+        File file = Utils.join(dir, "journal");
+        String line = (oldID == null ? "-" : oldID.name()) + " "
+                + (newID == null ? "-" : newID.name()) + " " + name;
+        if (file.length() > JOURNAL_MAX) {
+            Utils.writeAtomically(file,
+                    (line + "\n").getBytes(StandardCharsets.UTF_8));
+        } else {
+            appendLine(file, line);
+        }
+    }
+
+    /** Method to finish a ref update that a crash interrupted. Refs
+     *  are updated one at a time, each only after its journal line is
+     *  on disk, so only the last line can describe an unfinished
+     *  update: one whose ref still holds the old value. That update is
+     *  made again, as long as the commit it points to was written.
+     *  Only the end of the journal is read. */
+    void recover() {
+        String line = lastLine(Utils.join(dir, "journal"));
+        String[] parts = line == null ? null : line.split(" ", 3);
+        if (parts == null || parts.length != 3) {
+            return;
+        }
+        if (!parts[0].equals("-") && !ObjectId.isId(parts[0])
+                || !parts[1].equals("-") && !ObjectId.isId(parts[1])) {
+            return;
+        }
+        ObjectId oldID = ObjectId.isId(parts[0])
+                ? ObjectId.fromHex(parts[0]) : null;
+        ObjectId newID = ObjectId.isId(parts[1])
+                ? ObjectId.fromHex(parts[1]) : null;
+        ObjectId current = readRef(parts[2]);
+        if (!Objects.equals(current, oldID)
+                || Objects.equals(current, newID)) {
+            return;
+        }
+        if (newID == null) {
+            refFile(parts[2]).delete();
+        } else if (hasCommit(newID)) {
+            File file = refFile(parts[2]);
+            file.getParentFile().mkdirs();
+            Utils.writeAtomically(file,
+                    newID.name().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Method to get the names of all the refs in this store, in
+     *  lexicographic order.
+     * @return The names of the refs
+     */
+    List<String> refNames() {
+        ArrayList<String> names = new ArrayList<>();
+        collectRefs(Utils.join(dir, "refs"), "", names);
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Helper method for refNames() that walks a directory of refs.
+     * @param refDir The directory to be walked
+     * @param prefix The ref name prefix of the directory
+     * @param names The list of names found so far
+     */
+    private void collectRefs(File refDir, String prefix,
+                             ArrayList<String> names) {
+        File[] files = refDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectRefs(file, prefix + file.getName() + "/", names);
+            } else if (!file.getName().endsWith(".tmp")) {
+                names.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /** Method to get the name of the current branch.
+     * @return The name of the current branch */
+    String readHead() {
+        return Utils.readContentsAsString(Utils.join(dir, "HEAD")).trim();
+    }
+
+    /** Method to set the name of the current branch.
+     * @param branchName The name of the current branch */
+    void writeHead(String branchName) {
+        Utils.writeAtomically(Utils.join(dir, "HEAD"),
+                branchName.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
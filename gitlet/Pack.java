@@ -0,0 +1,515 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Pack class that keeps many blobs in one packfile, along with an
+ *  index file that maps each blob's sha1 to where it starts in the
+ *  packfile. A blob is either stored whole or as a delta against
+ *  another blob in the same pack, usually the previous version of the
+ *  same file, so a large file that changes a little from one commit
+ *  to the next only costs the size of its changes.
+ *  <p>
+ *  After a 12-byte header ("GPAK", a version number and the number of
+ *  blobs) each entry of the packfile is:
+ *  <pre>
+ *       1 byte   FULL or DELTA
+ *      20 bytes  the sha1 of the base blob (DELTA entries only)
+ *       4 bytes  the length of the data that follows
+ *       n bytes  the zlib-compressed contents, or delta
+ *  </pre>
+ *  After a 12-byte header ("GIDX", a version number and the number of
+ *  blobs) the index holds one 28-byte record per blob, sorted by sha1:
+ *  the 20-byte sha1 followed by the 8-byte offset of its entry. Both
+ *  files are memory-mapped, the packfile in pieces of SEGMENT bytes so
+ *  that it may grow past the 2 GB a single mapping can hold, and a
+ *  blob is found with a binary search of the index.
+ *  @author Brian Unggul
+ */
+class Pack {
+
+    /** The first four bytes of a packfile ("GPAK"). */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** The first four bytes of a pack index ("GIDX"). */
+    private static final int INDEX_MAGIC = 0x47494458;
+
+    /** The version of the packfile and index layout. */
+    private static final int VERSION = 1;
+
+    /** The size of the header of both files in bytes. */
+    private static final int HEADER = 12;
+
+    /** The size of an index record in bytes. */
+    private static final int RECORD = ObjectId.BYTES + 8;
+
+    /** The type of an entry holding a whole blob. */
+    private static final byte FULL = 0;
+
+    /** The type of an entry holding a delta against another blob. */
+    private static final byte DELTA = 1;
+
+    /** The longest chain of deltas a blob may be stored at the end
+     *  of, which bounds the work needed to read it. */
+    static final int MAX_DEPTH = 16;
+
+    /** The size of the blocks of a base blob that a delta can copy
+     *  from. */
+    private static final int BLOCK = 16;
+
+    /** Delta instruction that inserts the bytes that follow it. */
+    private static final byte INSERT = 0;
+
+    /** Delta instruction that copies a range of the base blob. */
+    private static final byte COPY = 1;
+
+    /** The size of the pieces the packfile is mapped in. */
+    private static final long SEGMENT = 1L << 30;
+
+    /** The mapped pieces of the packfile, each SEGMENT bytes long but
+     *  the last. */
+    private final MappedByteBuffer[] pack;
+
+    /** The mapped index. */
+    private final MappedByteBuffer index;
+
+    /** The number of blobs in this pack. */
+    private final int count;
+
+    /** Constructor for the pack stored in PACKFILE and INDEXFILE.
+     * @param packFile The packfile
+     * @param indexFile The index of the packfile */
+    Pack(File packFile, File indexFile) {
+        pack = map(packFile, SEGMENT);
+        MappedByteBuffer[] indexSegments = map(indexFile, Integer.MAX_VALUE);
+        if (indexSegments.length != 1) {
+            throw Utils.error("Pack index %s is too large.", indexFile);
+        }
+        index = indexSegments[0];
+        ByteBuffer header = slice(0, HEADER);
+        checkHeader(header, PACK_MAGIC, packFile);
+        checkHeader(index, INDEX_MAGIC, indexFile);
+        count = index.getInt(8);
+        if (header.getInt(8) != count
+                || index.capacity() != HEADER + (long) count * RECORD) {
+            throw Utils.error("Corrupt pack %s.", packFile);
+        }
+    }
+
+    /** Method to map a whole file, in pieces of at most a given size.
+     * @param file The file to be mapped
+     * @param segment The size of the pieces
+     * @return The mapped pieces of the file */
+    private static MappedByteBuffer[] map(File file, long segment) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            MappedByteBuffer[] segments = new MappedByteBuffer[
+                    (int) Math.max(1, (length + segment - 1) / segment)];
+            for (int i = 0; i < segments.length; i += 1) {
+                segments[i] = raf.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, i * segment,
+                        Math.min(segment, length - i * segment));
+            }
+            return segments;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to check the header at the start of a file.
+     * @param buf The start of the file
+     * @param magic The first four bytes the file must start with
+     * @param file The file */
+    private static void checkHeader(ByteBuffer buf, int magic, File file) {
+        if (buf.capacity() < HEADER || buf.getInt(0) != magic
+                || buf.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack %s.", file);
+        }
+    }
+
+    /** Method to get a range of the packfile. A range that lies within
+     *  one mapped piece is read straight from it; one that crosses
+     *  into the next piece is copied.
+     * @param pos The offset of the range in the packfile
+     * @param length The length of the range
+     * @return A buffer over the range */
+    private ByteBuffer slice(long pos, int length) {
+        int seg = (int) (pos / SEGMENT);
+        int off = (int) (pos % SEGMENT);
+        if (length < 0 || seg >= pack.length) {
+            throw Utils.error("Corrupt pack.");
+        }
+        ByteBuffer buf = pack[seg].duplicate();
+        if (off + (long) length <= buf.capacity()) {
+            buf.position(off).limit(off + length);
+            return buf.slice();
+        }
+        byte[] bytes = new byte[length];
+        int done = 0;
+        while (done < length) {
+            seg = (int) ((pos + done) / SEGMENT);
+            off = (int) ((pos + done) % SEGMENT);
+            if (seg >= pack.length || off >= pack[seg].capacity()) {
+                throw Utils.error("Corrupt pack.");
+            }
+            buf = pack[seg].duplicate();
+            buf.position(off);
+            int n = Math.min(length - done, buf.remaining());
+            buf.get(bytes, done, n);
+            done += n;
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /** Method to get the number of blobs in this pack.
+     * @return The number of blobs */
+    int size() {
+        return count;
+    }
+
+    /** Method to get the sha1s of all the blobs in this pack, in
+     *  sorted order.
+     * @return The list of sha1s */
+    List<String> ids() {
+        ArrayList<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            ids.add(ObjectId.read(index, HEADER + i * RECORD).name());
+        }
+        return ids;
+    }
+
+    /** Method to check if the blob with the specified sha1 is in this
+     *  pack.
+     * @param sha1 The sha1 of the blob
+     * @return Whether or not the blob is in this pack */
+    boolean contains(String sha1) {
+        return offset(sha1) >= 0;
+    }
+
+    /** Method to find the entry of a blob with a binary search of the
+     *  index.
+     * @param sha1 The sha1 of the blob
+     * @return The offset of the blob's entry, or -1 if it is not here */
+    private long offset(String sha1) {
+        if (!ObjectId.isId(sha1)) {
+            return -1;
+        }
+        ObjectId id = ObjectId.fromHex(sha1);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ObjectId.read(index, HEADER + mid * RECORD)
+                    .compareTo(id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return index.getLong(HEADER + mid * RECORD
+                        + ObjectId.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    /** Method to open the contents of a blob in this pack for reading.
+     *  Whole blobs are decompressed straight from the mapped packfile
+     *  as they are read; deltas are applied to their base first.
+     * @param sha1 The sha1 of the blob
+     * @return The stream of the blob's contents */
+    InputStream open(String sha1) {
+        long pos = offset(sha1);
+        if (pos < 0) {
+            throw Utils.error("No blob %s in pack.", sha1);
+        }
+        if (slice(pos, 1).get() == DELTA) {
+            return new ByteArrayInputStream(read(sha1));
+        }
+        return new InflaterInputStream(new BufferStream(data(pos + 1)));
+    }
+
+    /** Method to get the whole contents of a blob in this pack.
+     * @param sha1 The sha1 of the blob
+     * @return The contents of the blob */
+    byte[] read(String sha1) {
+        long pos = offset(sha1);
+        if (pos < 0) {
+            throw Utils.error("No blob %s in pack.", sha1);
+        }
+        if (slice(pos, 1).get() == FULL) {
+            return inflate(data(pos + 1));
+        }
+        String base = ObjectId.read(slice(pos + 1, ObjectId.BYTES), 0)
+                .name();
+        return applyDelta(read(base),
+                inflate(data(pos + 1 + ObjectId.BYTES)));
+    }
+
+    /** Helper method that gets the data of an entry.
+     * @param pos The offset of the length that precedes the data
+     * @return A buffer over the data */
+    private ByteBuffer data(long pos) {
+        return slice(pos + 4, slice(pos, 4).getInt());
+    }
+
+    /** Helper method that decompresses a whole buffer.
+     * @param buf The compressed data
+     * @return The decompressed data */
+    private static byte[] inflate(ByteBuffer buf) {
+        try (InputStream in = new InflaterInputStream(new BufferStream(buf))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Method to write a new packfile and index holding the specified
+     *  blobs. A blob with an entry in BASES is stored as a delta
+     *  against that base, as long as the delta is less than half the
+     *  size of the blob; every base must itself be one of the blobs
+     *  being packed. A blob with no base is compressed as it is read;
+     *  only a blob with a base, and its base, are read into memory to
+     *  compute the delta. The data of a single entry must fit in 2 GB.
+     *  Both files are forced to disk before this method returns.
+     * @param packFile The packfile to be written
+     * @param indexFile The index to be written
+     * @param ids The sha1s of the blobs to be packed
+     * @param bases The base to try for each blob that has one
+     * @param source The store the blobs are read from */
+    static void write(File packFile, File indexFile, List<String> ids,
+                      Map<String, String> bases, ObjectStore source) {
+        HashMap<ObjectId, Long> offsets = new HashMap<>();
+        try (FileOutputStream file = new FileOutputStream(packFile);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(file, Utils.BUFFER_SIZE))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.flush();
+                offsets.put(ObjectId.fromHex(id),
+                        file.getChannel().position());
+                String base = bases.get(id);
+                if (base == null) {
+                    out.writeByte(FULL);
+                    try (InputStream in = source.openBlob(id)) {
+                        writeData(out, file, in);
+                    }
+                    continue;
+                }
+                byte[] contents = source.readBlob(id);
+                byte[] delta = delta(source.readBlob(base), contents);
+                if (delta.length < contents.length / 2) {
+                    out.writeByte(DELTA);
+                    out.write(ObjectId.fromHex(base).toBytes());
+                    writeData(out, file, new ByteArrayInputStream(delta));
+                } else {
+                    out.writeByte(FULL);
+                    writeData(out, file, new ByteArrayInputStream(contents));
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectId[] sorted = offsets.keySet().toArray(new ObjectId[0]);
+        Arrays.sort(sorted);
+        ByteBuffer idx = ByteBuffer.allocate(HEADER + sorted.length * RECORD);
+        idx.putInt(INDEX_MAGIC).putInt(VERSION).putInt(sorted.length);
+        for (ObjectId id : sorted) {
+            id.write(idx);
+            idx.putLong(offsets.get(id));
+        }
+        Utils.writeAtomically(indexFile, idx.array());
+    }
+
+    /** Helper method for write() that writes the compressed form of
+     *  some data, preceded by its length. The data is compressed as it
+     *  is read, and the length is filled in once it is known.
+     * @param out The stream to be written
+     * @param file The file OUT writes to
+     * @param in The data to be compressed */
+    private static void writeData(DataOutputStream out, FileOutputStream file,
+                                  InputStream in) throws IOException {
+        out.flush();
+        long start = file.getChannel().position();
+        out.writeInt(0);
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream zip = new DeflaterOutputStream(out,
+                    deflater, Utils.BUFFER_SIZE);
+            in.transferTo(zip);
+            zip.finish();
+        } finally {
+            deflater.end();
+        }
+        out.flush();
+        long length = file.getChannel().position() - start - 4;
+        if (length > Integer.MAX_VALUE) {
+            throw Utils.error("Blob too large to pack.");
+        }
+        file.getChannel().write(ByteBuffer.allocate(4)
+                .putInt(0, (int) length), start);
+    }
+
+    /** Method to compute a delta that turns one blob into another.
+     *  The base is cut into blocks, and wherever a block of the base
+     *  shows up in the target the match is grown in both directions
+     *  and stored as a COPY of the base; everything else is stored as
+     *  an INSERT of literal bytes.
+     * @param base The blob the delta is applied to
+     * @param target The blob the delta produces
+     * @return The delta */
+    static byte[] delta(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(target.length);
+            int pending = 0;
+            int i = 0;
+            while (i + BLOCK <= target.length) {
+                Integer match = blocks.get(hash(target, i));
+                if (match == null || !Arrays.equals(base, match,
+                        match + BLOCK, target, i, i + BLOCK)) {
+                    i += 1;
+                    continue;
+                }
+                int start = match;
+                int back = 0;
+                while (back < i - pending && start > 0
+                        && base[start - 1] == target[i - back - 1]) {
+                    start -= 1;
+                    back += 1;
+                }
+                int end = match + BLOCK;
+                int j = i + BLOCK;
+                while (end < base.length && j < target.length
+                        && base[end] == target[j]) {
+                    end += 1;
+                    j += 1;
+                }
+                insert(out, target, pending, i - back);
+                out.writeByte(COPY);
+                out.writeInt(start);
+                out.writeInt(end - start);
+                pending = j;
+                i = j;
+            }
+            insert(out, target, pending, target.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Helper method for delta() that writes an INSERT instruction,
+     *  unless there is nothing to insert.
+     * @param out The stream the delta is written to
+     * @param target The blob the delta produces
+     * @param from The first byte of target to be inserted
+     * @param to The byte after the last byte to be inserted */
+    private static void insert(DataOutputStream out, byte[] target,
+                               int from, int to) throws IOException {
+        if (to > from) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Helper method for delta() that hashes one block of a blob.
+     * @param data The blob
+     * @param pos The start of the block
+     * @return The hash of the block */
+    private static int hash(byte[] data, int pos) {
+        int h = 0;
+        for (int i = pos; i < pos + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Method to apply a delta made by delta() to its base.
+     * @param base The blob the delta is applied to
+     * @param delta The delta
+     * @return The blob the delta produces */
+    static byte[] applyDelta(byte[] base, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(delta))) {
+            byte[] result = new byte[in.readInt()];
+            int pos = 0;
+            while (pos < result.length) {
+                byte op = in.readByte();
+                if (op == COPY) {
+                    int from = in.readInt();
+                    int length = in.readInt();
+                    System.arraycopy(base, from, result, pos, length);
+                    pos += length;
+                } else if (op == INSERT) {
+                    int length = in.readInt();
+                    in.readFully(result, pos, length);
+                    pos += length;
+                } else {
+                    throw Utils.error("Corrupt delta.");
+                }
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw Utils.error("Corrupt delta.");
+        }
+    }
+
+    /** An input stream over the remaining bytes of a buffer. */
+    private static class BufferStream extends InputStream {
+
+        /** The buffer being read. */
+        private final ByteBuffer buf;
+
+        /** Constructor for a stream over BUF.
+         * @param buffer The buffer to be read */
+        BufferStream(ByteBuffer buffer) {
+            buf = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+
+}
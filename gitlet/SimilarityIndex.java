@@ -0,0 +1,335 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** SimilarityIndex class that finds the files a branch renamed, by
+ *  how much of their contents they share. Each blob gets a MinHash
+ *  signature: its lines are hashed, and for each of SIZE hash
+ *  functions the smallest hash of any line is kept. The share of
+ *  positions at which two signatures agree estimates the share of
+ *  distinct lines the two blobs have in common, so blobs are compared
+ *  without being read again. A blob id includes the name of the file,
+ *  so a file renamed without changes gets a new id; such renames are
+ *  paired first by a hash of the contents alone, kept with each
+ *  signature. Signatures depend only on the contents of a blob, so
+ *  they are kept by blob id in .gitlet/similarity and only computed
+ *  once. To avoid comparing every removed file with
+ *  every added one, signatures are cut into bands, and only files
+ *  that agree on a whole band are compared.
+ *  @author Brian Unggul
+ */
+class SimilarityIndex {
+
+    /** The magic number of an encoded index ("GSIM"). */
+    private static final int MAGIC = 0x4753494d;
+
+    /** The version of the encoding of the index. */
+    private static final int VERSION = 2;
+
+    /** The number of hash functions in a signature. */
+    static final int SIZE = 64;
+
+    /** The number of positions of a signature in a band. */
+    private static final int ROWS = 3;
+
+    /** The most files that are compared with each other for sharing
+     *  one band; bigger groups are mostly copies of the same boilerplate
+     *  and are skipped. */
+    private static final int MAX_GROUP = 100;
+
+    /** The share of lines, in percent, two versions of a file must
+     *  have in common for one to be taken as a rename of the other. */
+    static final int THRESHOLD = 50;
+
+    /** The signature of each blob, by sha1. */
+    private final HashMap<String, int[]> signatures;
+
+    /** The hash of the contents alone of each blob that has a
+     *  signature, by sha1. */
+    private final HashMap<String, Long> contents;
+
+    /** Whether or not this index has changed since it was loaded. */
+    private boolean changed;
+
+    /** Constructor for an empty index. */
+    SimilarityIndex() {
+        signatures = new HashMap<>();
+        contents = new HashMap<>();
+    }
+
+    /** Method to read the index stored in the specified file, or make
+     *  an empty one if there is none or it was written by version 1,
+     *  which kept no hashes of the contents.
+     * @param file The file the index is stored in
+     * @return The index */
+    static SimilarityIndex load(File file) {
+        SimilarityIndex index = new SimilarityIndex();
+        if (!file.isFile()) {
+            return index;
+        }
+        Codec.Input in = new Codec.Input(Utils.readContents(file),
+                MAGIC, VERSION);
+        if (in.version() < VERSION) {
+            return index;
+        }
+        for (int i = in.count(); i > 0; i -= 1) {
+            String sha1 = in.id().name();
+            int[] signature = new int[SIZE];
+            for (int k = 0; k < SIZE; k += 1) {
+                signature[k] = (int) in.varint();
+            }
+            index.signatures.put(sha1, signature);
+            index.contents.put(sha1, in.varint());
+        }
+        in.end();
+        return index;
+    }
+
+    /** Method to write this index to the specified file if it has
+     *  changed.
+     * @param file The file the index is stored in */
+    void save(File file) {
+        if (!changed) {
+            return;
+        }
+        Codec.Output out = new Codec.Output(MAGIC, VERSION);
+        out.varint(signatures.size());
+        for (Map.Entry<String, int[]> entry : signatures.entrySet()) {
+            out.id(ObjectId.fromHex(entry.getKey()));
+            for (int value : entry.getValue()) {
+                out.varint(value & 0xffffffffL);
+            }
+            out.varint(contents.get(entry.getKey()));
+        }
+        Utils.writeAtomically(file, out.toByteArray());
+        changed = false;
+    }
+
+    /** Method to find the files that were renamed: for each removed
+     *  file, the added file with the most lines in common with it, if
+     *  they have at least THRESHOLD percent in common. Files with the
+     *  same contents are paired first, by the hash of their contents.
+     *  Each file is paired at most
+     *  once, the most similar pairs first.
+     * @param removed The sha1s of the removed files, by name
+     * @param added The sha1s of the added files, by name
+     * @param store The store the blobs are read from
+     * @return The new name of each renamed file, by old name */
+    TreeMap<String, String> renames(Map<String, String> removed,
+                                    Map<String, String> added,
+                                    ObjectStore store) {
+        TreeMap<String, String> result = new TreeMap<>();
+        TreeMap<String, String> left = new TreeMap<>(removed);
+        TreeMap<String, String> right = new TreeMap<>(added);
+        if (left.isEmpty() || right.isEmpty()) {
+            return result;
+        }
+        String[] names = new String[left.size() + right.size()];
+        String[] sha1s = new String[names.length];
+        int count = 0;
+        for (Map<String, String> side : List.of(left, right)) {
+            for (Map.Entry<String, String> entry : side.entrySet()) {
+                names[count] = entry.getKey();
+                sha1s[count] = entry.getValue();
+                count += 1;
+            }
+        }
+        int[][] sigs = new int[names.length][];
+        Gitlet.runParallel(names.length,
+                i -> sigs[i] = signature(sha1s[i], store));
+        HashSet<String> taken = new HashSet<>();
+        HashMap<Long, String> byContents = new HashMap<>();
+        for (int j = left.size(); j < names.length; j += 1) {
+            if (sigs[j] != null) {
+                byContents.putIfAbsent(contents.get(sha1s[j]), names[j]);
+            }
+        }
+        for (int i = 0; i < left.size(); i += 1) {
+            String name = sigs[i] == null ? null
+                    : byContents.remove(contents.get(sha1s[i]));
+            if (name != null) {
+                result.put(names[i], name);
+                taken.add(name);
+            }
+        }
+        for (Candidate pair : candidates(sigs, left.size())) {
+            String from = names[pair.first];
+            String to = names[pair.second];
+            if (!result.containsKey(from) && taken.add(to)) {
+                result.put(from, to);
+            }
+        }
+        return result;
+    }
+
+    /** A pair of a removed and an added file that may be a rename. */
+    private static class Candidate implements Comparable<Candidate> {
+
+        /** The index of the removed file. */
+        private final int first;
+
+        /** The index of the added file. */
+        private final int second;
+
+        /** The number of positions at which their signatures agree. */
+        private final int score;
+
+        /** Constructor for a candidate.
+         * @param removed The index of the removed file
+         * @param added The index of the added file
+         * @param agree The number of positions at which they agree */
+        Candidate(int removed, int added, int agree) {
+            first = removed;
+            second = added;
+            score = agree;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (score != other.score) {
+                return other.score - score;
+            } else if (first != other.first) {
+                return first - other.first;
+            }
+            return second - other.second;
+        }
+    }
+
+    /** Helper method for renames() that finds the pairs of a removed
+     *  and an added file that share at least THRESHOLD percent of
+     *  their signatures, comparing only files that agree on a band.
+     * @param sigs The signatures of the removed files, then of the
+     * added ones; null for empty files
+     * @param split The number of removed files
+     * @return The pairs, the most similar first */
+    private static List<Candidate> candidates(int[][] sigs, int split) {
+        ArrayList<Candidate> result = new ArrayList<>();
+        HashSet<Long> seen = new HashSet<>();
+        for (int band = 0; band + ROWS <= SIZE; band += ROWS) {
+            HashMap<List<Integer>, List<Integer>> groups = new HashMap<>();
+            for (int i = 0; i < sigs.length; i += 1) {
+                if (sigs[i] == null) {
+                    continue;
+                }
+                List<Integer> key = new ArrayList<>(ROWS);
+                for (int k = band; k < band + ROWS; k += 1) {
+                    key.add(sigs[i][k]);
+                }
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+            for (List<Integer> group : groups.values()) {
+                if (group.size() > MAX_GROUP) {
+                    continue;
+                }
+                for (int i : group) {
+                    for (int j : group) {
+                        if (i >= split || j < split
+                                || !seen.add((long) i << 32 | j)) {
+                            continue;
+                        }
+                        int agree = agreement(sigs[i], sigs[j]);
+                        if (agree * 100 >= THRESHOLD * SIZE) {
+                            result.add(new Candidate(i, j, agree));
+                        }
+                    }
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Method to count the positions at which two signatures agree.
+     * @param one The first signature
+     * @param two The second signature
+     * @return The number of positions */
+    static int agreement(int[] one, int[] two) {
+        int agree = 0;
+        for (int k = 0; k < SIZE; k += 1) {
+            if (one[k] == two[k]) {
+                agree += 1;
+            }
+        }
+        return agree;
+    }
+
+    /** Method to get the signature of a blob, computing it and the hash
+     *  of its contents and keeping them in this index if they are not
+     *  there yet. Several threads may call it at once.
+     * @param sha1 The sha1 of the blob
+     * @param store The store the blob is read from
+     * @return The signature, or null if the blob is empty */
+    int[] signature(String sha1, ObjectStore store) {
+        synchronized (this) {
+            if (signatures.containsKey(sha1)) {
+                return signatures.get(sha1);
+            }
+        }
+        byte[] data = store.readBlob(sha1);
+        int[] signature = signature(data);
+        synchronized (this) {
+            if (signature != null) {
+                signatures.put(sha1, signature);
+                contents.put(sha1, XxHash64.hash(data));
+                changed = true;
+            }
+        }
+        return signature;
+    }
+
+    /** Method to compute the signature of some contents. Each line is
+     *  hashed without its line terminator, and its hash is mixed with
+     *  a different constant for each position of the signature.
+     * @param data The contents
+     * @return The signature, or null if there are no lines */
+    static int[] signature(byte[] data) {
+        int[] signature = new int[SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        boolean empty = true;
+        int start = 0;
+        for (int i = 0; i <= data.length; i += 1) {
+            if (i < data.length && data[i] != '\n') {
+                continue;
+            }
+            int end = i;
+            if (end > start && data[end - 1] == '\r') {
+                end -= 1;
+            }
+            if (i < data.length || end > start) {
+                long line = 0xcbf29ce484222325L;
+                for (int k = start; k < end; k += 1) {
+                    line = (line ^ (data[k] & 0xff)) * 0x100000001b3L;
+                }
+                for (int k = 0; k < SIZE; k += 1) {
+                    int value = (int) (mix(line + k * 0x9E3779B97F4A7C15L)
+                            >>> 33);
+                    signature[k] = Math.min(signature[k], value);
+                }
+                empty = false;
+            }
+            start = i + 1;
+        }
+        return empty ? null : signature;
+    }
+
+    /** Helper method for signature() that scrambles the bits of a
+     *  number (the finalizer of MurmurHash3).
+     * @param value The number
+     * @return The scrambled number */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+}
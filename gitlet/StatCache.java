@@ -0,0 +1,237 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/** StatCache class that remembers the size, modification time, inode
+ *  and sha1 of each working file that has been hashed, so a file is
+ *  only read and hashed again when its stat data has changed. It also
+ *  remembers the xxHash64 of the contents, so a file that was only
+ *  touched, or rewritten with the same contents, is recognized by
+ *  that much cheaper hash and its sha1 is not computed again. The
+ *  cache is kept in .gitlet/index.
+ *  @author Brian Unggul
+ */
+class StatCache {
+
+    /** The magic number of an encoded stat cache ("GSTC"). */
+    private static final int MAGIC = 0x47535443;
+
+    /** The version of the encoding of the stat cache. */
+    private static final int VERSION = 2;
+
+    /** A file modified this many milliseconds or less before the cache
+     *  was saved could have been changed again within the same clock
+     *  tick, so its entry is not trusted and it is hashed again. */
+    private static final long RACY_MILLIS = 1000;
+
+    /** The cached entries, keyed by file path. */
+    private HashMap<String, Entry> entries;
+
+    /** The time this cache was last saved, in milliseconds. */
+    private long savedAt;
+
+    /** Whether or not this cache has changed since it was loaded. */
+    private boolean changed;
+
+    /** Constructor for an empty cache. */
+    StatCache() {
+        entries = new HashMap<>();
+    }
+
+    /** Method to read the cache stored in the specified file, or make
+     *  an empty one if there is none.
+     * @param file The file the cache is stored in
+     * @return The cache */
+    static StatCache load(File file) {
+        if (!file.isFile()) {
+            return new StatCache();
+        }
+        Codec.Input in = new Codec.Input(Utils.readContents(file),
+                MAGIC, VERSION);
+        StatCache cache = new StatCache();
+        if (in.version() < VERSION) {
+            return cache;
+        }
+        cache.savedAt = in.varint();
+        for (int i = in.count(); i > 0; i -= 1) {
+            String path = in.string();
+            Entry entry = new Entry();
+            entry.size = in.varint();
+            entry.mtime = in.varint();
+            entry.inode = in.string();
+            entry.hash = in.id().name();
+            entry.fast = in.varint();
+            cache.entries.put(path, entry);
+        }
+        in.end();
+        return cache;
+    }
+
+    /** Method to write this cache to the specified file if it has
+     *  changed. Entries of files that no longer exist are dropped.
+     * @param file The file the cache is stored in */
+    void save(File file) {
+        if (!changed) {
+            return;
+        }
+        Iterator<String> iter = entries.keySet().iterator();
+        while (iter.hasNext()) {
+            if (!new File(iter.next()).isFile()) {
+                iter.remove();
+            }
+        }
+        savedAt = System.currentTimeMillis();
+        Codec.Output out = new Codec.Output(MAGIC, VERSION);
+        out.varint(savedAt);
+        out.varint(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            out.string(entry.getKey());
+            out.varint(entry.getValue().size);
+            out.varint(entry.getValue().mtime);
+            out.string(entry.getValue().inode);
+            out.id(ObjectId.fromHex(entry.getValue().hash));
+            out.varint(entry.getValue().fast);
+        }
+        Utils.writeAtomically(file, out.toByteArray());
+        changed = false;
+    }
+
+    /** Method to get the sha1 of a working file, as computed by
+     *  Utils.sha1(file). The file is only read if its stat data
+     *  differs from the cached entry, and then its sha1 and xxHash64
+     *  are computed in the same read. Several threads may hash files
+     *  at the same time; only the lookups and updates of the entries
+     *  are done one thread at a time.
+     * @param file The working file
+     * @return The sha1 of the file */
+    String hash(File file) {
+        String path = Utils.fileConsistency(file);
+        Entry stat = stat(file);
+        Entry cached = fresh(path, stat);
+        if (cached != null) {
+            return cached.hash;
+        }
+        XxHash64 fast = new XxHash64();
+        stat.hash = Utils.sha1(file, fast);
+        stat.fast = fast.digest();
+        synchronized (this) {
+            entries.put(path, stat);
+            changed = true;
+        }
+        return stat.hash;
+    }
+
+    /** Method to check if a working file has the specified sha1. The
+     *  xxHash64 of the cached entry is only used to prove that a file
+     *  changed: if the entry was made when the file had that sha1 and
+     *  the file now has another size or another xxHash64, it differs,
+     *  and its sha1 is never computed. Two files with the same
+     *  xxHash64 may still differ, so in every other case the sha1 is
+     *  computed and compared.
+     * @param file The working file
+     * @param sha1 The sha1 to be checked
+     * @return Whether or not the file has that sha1 */
+    boolean matches(File file, String sha1) {
+        String path = Utils.fileConsistency(file);
+        Entry stat = stat(file);
+        Entry cached = fresh(path, stat);
+        if (cached != null) {
+            return cached.hash.equals(sha1);
+        }
+        synchronized (this) {
+            cached = entries.get(path);
+        }
+        if (cached != null && cached.hash.equals(sha1)
+                && (cached.size != stat.size
+                    || XxHash64.hash(file) != cached.fast)) {
+            return false;
+        }
+        return hash(file).equals(sha1);
+    }
+
+    /** Helper method for hash() and matches() that gets the cached
+     *  entry of a file if its stat data shows the file did not change
+     *  since the entry was made.
+     * @param path The path of the file
+     * @param stat The stat data of the file
+     * @return The entry, or null if the file must be read */
+    private synchronized Entry fresh(String path, Entry stat) {
+        Entry cached = entries.get(path);
+        if (cached != null && cached.sameStat(stat)
+                && cached.mtime + RACY_MILLIS < savedAt) {
+            return cached;
+        }
+        return null;
+    }
+
+    /** Method to record the sha1 of a working file that was just
+     *  written with known contents, so it does not have to be read
+     *  again to be hashed. Like hash(), it may be called by several
+     *  threads at once.
+     * @param file The working file
+     * @param contents The contents that were written to it
+     * @param sha1 The sha1 of the contents */
+    void put(File file, byte[] contents, String sha1) {
+        String path = Utils.fileConsistency(file);
+        Entry stat = stat(file);
+        stat.hash = sha1;
+        stat.fast = XxHash64.hash(contents);
+        synchronized (this) {
+            entries.put(path, stat);
+            changed = true;
+        }
+    }
+
+    /** Method to read the stat data of a file.
+     * @param file The file
+     * @return An entry with the file's stat data and no hash */
+    private static Entry stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+            Entry entry = new Entry();
+            entry.size = attrs.size();
+            entry.mtime = attrs.lastModifiedTime().toMillis();
+            entry.inode = Objects.toString(attrs.fileKey(), "");
+            return entry;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The stat data and sha1 of one file. */
+    private static class Entry {
+
+        /** The size of the file in bytes. */
+        private long size;
+
+        /** The modification time of the file, in milliseconds. */
+        private long mtime;
+
+        /** The file key (device and inode) of the file. */
+        private String inode;
+
+        /** The sha1 of the file. */
+        private String hash;
+
+        /** The xxHash64 of the contents of the file. */
+        private long fast;
+
+        /** Method to check if this entry has the same stat data as
+         *  another one.
+         * @param other The other entry
+         * @return Whether or not the stat data are the same */
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && inode.equals(other.inode);
+        }
+    }
+
+}
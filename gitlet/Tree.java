@@ -0,0 +1,509 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Tree class that maps the paths of the files tracked by a commit to
+ *  the sha1s of their blobs. Each directory has its own tree, whose
+ *  entries are the files in it, keyed by name, and its
+ *  subdirectories, keyed by name followed by a slash and pointing to
+ *  their own trees. The tree of a directory is an immutable hash
+ *  trie: a node holding at most LEAF_MAX entries is a leaf that lists
+ *  them, and a bigger node is a branch that splits its entries among
+ *  up to FANOUT children by the next four bits of the hash of each
+ *  name. Since the shape of a tree only depends on the entries in
+ *  it, every node is named by the sha1 of its contents, and equal
+ *  nodes are shared: adding, changing or removing a file only makes
+ *  new copies of the nodes on the path to that file, and every other
+ *  node, including the tree of every other directory, is shared with
+ *  the tree it was made from. Two trees can therefore be compared by
+ *  skipping every pair of nodes with the same id. The nodes live in
+ *  the object store, which keeps one instance of each node it has
+ *  seen.
+ *  @author Brian Unggul
+ */
+class Tree {
+
+    /** The largest number of entries a leaf may hold, unless it is at
+     *  MAX_DEPTH. */
+    private static final int LEAF_MAX = 32;
+
+    /** The number of bits of a name's hash used at each level. */
+    private static final int BITS = 4;
+
+    /** The number of children of a branch. */
+    private static final int FANOUT = 1 << BITS;
+
+    /** The depth below which every node is a leaf, because the bits
+     *  of the hash have run out. */
+    private static final int MAX_DEPTH = Integer.SIZE / BITS;
+
+    /** The character that separates the directories of a path. */
+    static final char SEPARATOR = '/';
+
+    /** The sha1 of this node's contents. */
+    private final String id;
+
+    /** The store the children of this node are read from. */
+    private final ObjectStore store;
+
+    /** The entries of this node by name if it is a leaf, or null. The
+     *  names of subdirectories end with SEPARATOR and map to the ids
+     *  of their trees; the names of files map to their sha1s. */
+    private final TreeMap<String, String> entries;
+
+    /** The ids of this node's children if it is a branch, with null
+     *  for empty children, or null. */
+    private final String[] children;
+
+    /** The number of entries in this node and all of its children. */
+    private final int size;
+
+    /** Constructor for a leaf node.
+     * @param objectStore The store of this node
+     * @param names The entries of this node, by name */
+    private Tree(ObjectStore objectStore, TreeMap<String, String> names) {
+        store = objectStore;
+        entries = names;
+        children = null;
+        size = names.size();
+        id = hash(text());
+    }
+
+    /** Constructor for a branch node.
+     * @param objectStore The store of this node
+     * @param childIDs The ids of the children, null for empty ones
+     * @param count The number of entries below this node */
+    private Tree(ObjectStore objectStore, String[] childIDs, int count) {
+        store = objectStore;
+        entries = null;
+        children = childIDs;
+        size = count;
+        id = hash(text());
+    }
+
+    /** Method to get the id of the tree with no files, which
+     *  depends on the hash function of the repository.
+     * @return The id of the empty tree */
+    static String emptyId() {
+        return hash("");
+    }
+
+    /** Method to get the tree with no files.
+     * @param objectStore The store of the tree
+     * @return The empty tree */
+    static Tree empty(ObjectStore objectStore) {
+        return objectStore.intern(new Tree(objectStore, new TreeMap<>()));
+    }
+
+    /** Method to read a node from the text written by text().
+     * @param objectStore The store of the node
+     * @param text The contents of the node
+     * @return The node */
+    static Tree parse(ObjectStore objectStore, String text) {
+        TreeMap<String, String> names = new TreeMap<>();
+        String[] childIDs = null;
+        int count = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith("blob ") || line.startsWith("tree ")) {
+                int space = line.indexOf(' ', "blob ".length());
+                String name = line.substring(space + 1);
+                if (line.startsWith("tree ")) {
+                    name += SEPARATOR;
+                }
+                names.put(name, line.substring("blob ".length(), space));
+            } else if (line.startsWith("size ")) {
+                childIDs = new String[FANOUT];
+                count = Integer.parseInt(line.substring("size ".length()));
+            } else if (line.startsWith("node ")) {
+                String[] parts = line.split(" ");
+                childIDs[Integer.parseInt(parts[1], 16)] = parts[2];
+            }
+        }
+        if (childIDs != null) {
+            return objectStore.intern(new Tree(objectStore, childIDs, count));
+        }
+        return objectStore.intern(new Tree(objectStore, names));
+    }
+
+    /** Method to get the text whose hash is the id of this node. A
+     *  leaf lists its entries in name order, one "blob SHA1 NAME" line
+     *  for each file and one "tree ID NAME" line for each
+     *  subdirectory; a branch has a "size N" line followed by one
+     *  "node INDEX ID" line for each child that is not empty.
+     * @return The canonical contents of this node */
+    String text() {
+        StringBuilder str = new StringBuilder();
+        if (entries != null) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                String name = entry.getKey();
+                if (isDirectory(name)) {
+                    str.append("tree ").append(entry.getValue()).append(" ")
+                            .append(name, 0, name.length() - 1);
+                } else {
+                    str.append("blob ").append(entry.getValue()).append(" ")
+                            .append(name);
+                }
+                str.append("\n");
+            }
+        } else {
+            str.append("size ").append(size).append("\n");
+            for (int i = 0; i < FANOUT; i += 1) {
+                if (children[i] != null) {
+                    str.append("node ").append(Integer.toHexString(i))
+                            .append(" ").append(children[i]).append("\n");
+                }
+            }
+        }
+        return str.toString();
+    }
+
+    /** Method to compute the id of a node from its contents.
+     * @param text The contents of the node
+     * @return The id of the node */
+    private static String hash(String text) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        return Utils.sha1("tree " + body.length + "\0", body);
+    }
+
+    /** Method to check if an entry name is the name of a
+     *  subdirectory.
+     * @param name The name of the entry
+     * @return Whether or not the name ends with SEPARATOR */
+    private static boolean isDirectory(String name) {
+        return name.charAt(name.length() - 1) == SEPARATOR;
+    }
+
+    /** Method to get the id of this node.
+     * @return The sha1 of this node's contents */
+    String getId() {
+        return id;
+    }
+
+    /** Method to get the number of entries in this directory, not
+     *  counting the files in its subdirectories.
+     * @return The number of entries */
+    int size() {
+        return size;
+    }
+
+    /** Method to get the ids of the tree nodes this node points to:
+     *  its children if it is a branch, or the trees of its
+     *  subdirectories if it is a leaf.
+     * @return The list of ids */
+    List<String> childIDs() {
+        ArrayList<String> ids = new ArrayList<>();
+        if (children != null) {
+            for (String child : children) {
+                if (child != null) {
+                    ids.add(child);
+                }
+            }
+        } else {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (isDirectory(entry.getKey())) {
+                    ids.add(entry.getValue());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Method to get the sha1s of the files listed in this node
+     *  itself.
+     * @return The list of sha1s, which is empty if this node is a
+     *         branch */
+    List<String> blobIDs() {
+        ArrayList<String> ids = new ArrayList<>();
+        if (entries != null) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (!isDirectory(entry.getKey())) {
+                    ids.add(entry.getValue());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Method to get every file in this tree and its subdirectories.
+     * @return The sha1s of the files by path, in path order */
+    TreeMap<String, String> entries() {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, String> entry : local().entrySet()) {
+            String name = entry.getKey();
+            if (isDirectory(name)) {
+                for (Map.Entry<String, String> file : store.readTree(
+                        entry.getValue()).entries().entrySet()) {
+                    result.put(name + file.getKey(), file.getValue());
+                }
+            } else {
+                result.put(name, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Method to get the entries of this directory itself.
+     * @return The entries by name */
+    private TreeMap<String, String> local() {
+        TreeMap<String, String> result = new TreeMap<>();
+        collect(result);
+        return result;
+    }
+
+    /** Helper method for local() that adds the entries below this
+     *  node to a map.
+     * @param result The map of entries found so far */
+    private void collect(TreeMap<String, String> result) {
+        if (entries != null) {
+            result.putAll(entries);
+            return;
+        }
+        for (String child : children) {
+            if (child != null) {
+                store.readTree(child).collect(result);
+            }
+        }
+    }
+
+    /** Method to get the sha1 of the file with the specified path.
+     * @param path The path of the file
+     * @return The sha1 of the file, or null if it is not in this tree */
+    String get(String path) {
+        int slash = path.indexOf(SEPARATOR);
+        if (slash < 0) {
+            return lookup(path);
+        }
+        String sub = lookup(path.substring(0, slash + 1));
+        return sub == null ? null
+                : store.readTree(sub).get(path.substring(slash + 1));
+    }
+
+    /** Method to get a tree with the file of the specified path set to
+     *  the specified sha1, and every other file the same as here.
+     *  Directories on the way to the file are added as needed.
+     * @param path The path of the file
+     * @param sha1 The sha1 of the file
+     * @return The new tree, which is this tree if nothing changed */
+    Tree with(String path, String sha1) {
+        int slash = path.indexOf(SEPARATOR);
+        if (slash < 0) {
+            return put(path, sha1, 0);
+        }
+        String dir = path.substring(0, slash + 1);
+        String sub = lookup(dir);
+        Tree oldSub = sub == null ? empty(store) : store.readTree(sub);
+        Tree newSub = oldSub.with(path.substring(slash + 1), sha1);
+        return newSub == oldSub ? this : put(dir, newSub.id, 0);
+    }
+
+    /** Method to get a tree without the file of the specified path,
+     *  and every other file the same as here. Directories left empty
+     *  are removed.
+     * @param path The path of the file
+     * @return The new tree, which is this tree if nothing changed */
+    Tree without(String path) {
+        int slash = path.indexOf(SEPARATOR);
+        if (slash < 0) {
+            return remove(path, 0);
+        }
+        String dir = path.substring(0, slash + 1);
+        String sub = lookup(dir);
+        if (sub == null) {
+            return this;
+        }
+        Tree oldSub = store.readTree(sub);
+        Tree newSub = oldSub.without(path.substring(slash + 1));
+        if (newSub == oldSub) {
+            return this;
+        } else if (newSub.size == 0) {
+            return remove(dir, 0);
+        }
+        return put(dir, newSub.id, 0);
+    }
+
+    /** Method to get the files that differ between two trees. Pairs of
+     *  nodes with the same id, such as the trees of directories that
+     *  did not change, are skipped without being read.
+     * @param one The first tree
+     * @param two The second tree
+     * @return For each path whose sha1 differs, the sha1 in the first
+     *         tree and the sha1 in the second tree (null where the file
+     *         is missing), in path order */
+    static TreeMap<String, String[]> diff(Tree one, Tree two) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(one, two, "", result);
+        return result;
+    }
+
+    /** Helper method for diff(one, two) that compares two nodes at the
+     *  same depth of the tries of the same directory.
+     * @param one The node of the first tree
+     * @param two The node of the second tree
+     * @param prefix The path of the directory, ending with SEPARATOR
+     *               unless it is the top
+     * @param result The differences found so far */
+    private static void diff(Tree one, Tree two, String prefix,
+                             TreeMap<String, String[]> result) {
+        if (one.id.equals(two.id)) {
+            return;
+        }
+        if (one.children != null && two.children != null) {
+            for (int i = 0; i < FANOUT; i += 1) {
+                diff(one.child(i), two.child(i), prefix, result);
+            }
+            return;
+        }
+        TreeMap<String, String> names1 = one.local();
+        TreeMap<String, String> names2 = two.local();
+        TreeSet<String> names = new TreeSet<>(names1.keySet());
+        names.addAll(names2.keySet());
+        for (String name : names) {
+            String id1 = names1.get(name);
+            String id2 = names2.get(name);
+            if (id1 != null && id1.equals(id2)) {
+                continue;
+            }
+            if (isDirectory(name)) {
+                diff(id1 == null ? empty(one.store) : one.store.readTree(id1),
+                        id2 == null ? empty(two.store)
+                                : two.store.readTree(id2),
+                        prefix + name, result);
+            } else {
+                result.put(prefix + name, new String[] {id1, id2});
+            }
+        }
+    }
+
+    /** Method to get the value of an entry of this directory.
+     * @param name The name of the entry
+     * @return The value of the entry, or null if there is none */
+    private String lookup(String name) {
+        Tree node = this;
+        for (int depth = 0; node.entries == null; depth += 1) {
+            String child = node.children[index(name, depth)];
+            if (child == null) {
+                return null;
+            }
+            node = store.readTree(child);
+        }
+        return node.entries.get(name);
+    }
+
+    /** Method to get a copy of this node with an entry set.
+     * @param name The name of the entry
+     * @param value The value of the entry
+     * @param depth The depth of this node
+     * @return The new node, which is this node if nothing changed */
+    private Tree put(String name, String value, int depth) {
+        if (entries != null) {
+            if (value.equals(entries.get(name))) {
+                return this;
+            }
+            TreeMap<String, String> names = new TreeMap<>(entries);
+            names.put(name, value);
+            return build(store, names, depth);
+        }
+        int i = index(name, depth);
+        Tree child = child(i);
+        Tree newChild = child.put(name, value, depth + 1);
+        if (newChild == child) {
+            return this;
+        }
+        return replace(i, newChild, size - child.size + newChild.size);
+    }
+
+    /** Method to get a copy of this node without an entry.
+     * @param name The name of the entry
+     * @param depth The depth of this node
+     * @return The new node, which is this node if nothing changed */
+    private Tree remove(String name, int depth) {
+        if (entries != null) {
+            if (!entries.containsKey(name)) {
+                return this;
+            }
+            TreeMap<String, String> names = new TreeMap<>(entries);
+            names.remove(name);
+            return store.intern(new Tree(store, names));
+        }
+        int i = index(name, depth);
+        Tree child = child(i);
+        Tree newChild = child.remove(name, depth + 1);
+        if (newChild == child) {
+            return this;
+        }
+        if (size - 1 <= LEAF_MAX) {
+            TreeMap<String, String> names = local();
+            names.remove(name);
+            return store.intern(new Tree(store, names));
+        }
+        return replace(i, newChild, size - 1);
+    }
+
+    /** Method to get one child of this branch.
+     * @param i The index of the child
+     * @return The child, which is the empty tree if there is none */
+    private Tree child(int i) {
+        return children[i] == null ? empty(store)
+                : store.readTree(children[i]);
+    }
+
+    /** Method to get a copy of this branch with one child replaced.
+     * @param i The index of the child
+     * @param child The new child
+     * @param count The number of entries below the new branch
+     * @return The new branch */
+    private Tree replace(int i, Tree child, int count) {
+        String[] childIDs = children.clone();
+        childIDs[i] = child.size == 0 ? null : child.id;
+        return store.intern(new Tree(store, childIDs, count));
+    }
+
+    /** Method to build the node holding the specified entries at the
+     *  specified depth: a leaf if there are few enough of them, or a
+     *  branch whose children are built the same way otherwise.
+     * @param objectStore The store of the node
+     * @param names The entries by name
+     * @param depth The depth of the node
+     * @return The node */
+    private static Tree build(ObjectStore objectStore,
+                              TreeMap<String, String> names, int depth) {
+        if (names.size() <= LEAF_MAX || depth >= MAX_DEPTH) {
+            return objectStore.intern(new Tree(objectStore, names));
+        }
+        ArrayList<TreeMap<String, String>> groups = new ArrayList<>();
+        for (int i = 0; i < FANOUT; i += 1) {
+            groups.add(new TreeMap<>());
+        }
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            groups.get(index(entry.getKey(), depth))
+                    .put(entry.getKey(), entry.getValue());
+        }
+        String[] childIDs = new String[FANOUT];
+        for (int i = 0; i < FANOUT; i += 1) {
+            if (!groups.get(i).isEmpty()) {
+                childIDs[i] = build(objectStore, groups.get(i),
+                        depth + 1).id;
+            }
+        }
+        return objectStore.intern(new Tree(objectStore, childIDs,
+                names.size()));
+    }
+
+    /** Method to get the child an entry belongs to at some depth. The
+     *  hash is String.hashCode(), whose value is fixed by the Java
+     *  language specification, so every run splits entries the same
+     *  way.
+     * @param name The name of the entry
+     * @param depth The depth of the branch
+     * @return The index of the child */
+    private static int index(String name, int depth) {
+        int shift = Integer.SIZE - BITS * (depth + 1);
+        return (name.hashCode() >>> shift) & (FANOUT - 1);
+    }
+
+}
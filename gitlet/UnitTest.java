@@ -6,6 +6,8 @@ import ucb.junit.textui;
 import java.io.File;
 import java.io.IOException;
 
+import static org.junit.Assert.*;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Brian Unggul
  */
@@ -43,6 +45,631 @@ public class UnitTest {
         mergeConflict(workFile, currFile, givenFile);
     }
 
-}
+    @Test
+    public void initialCommitIdTest() {
+        Commit commit = new Commit();
+        assertEquals("0a1d63e3040e5f61b6dc1a3addd3cdc8158f5c38",
+                commit.getSha1());
+        assertEquals(commit.getId(), commit.compSha1());
+    }
+
+    /** A synthetic history for the merge-base tests. */
+    static class History implements MergeBase.Ancestry {
+
+        /** The parents of each commit. */
+        private int[][] parents;
+
+        /** The generation of each commit. */
+        private int[] gens;
+
+        /** The number of commits added so far. */
+        private int size;
+
+        /** A history with room for N commits. */
+        History(int n) {
+            parents = new int[n][];
+            gens = new int[n];
+        }
+
+        /** Adds a commit with parents PS and returns its position. */
+        int add(int... ps) {
+            int gen = 1;
+            for (int p : ps) {
+                gen = Math.max(gen, gens[p] + 1);
+            }
+            parents[size] = ps;
+            gens[size] = gen;
+            size += 1;
+            return size - 1;
+        }
+
+        @Override
+        public int[] parents(int pos) {
+            return parents[pos];
+        }
+
+        @Override
+        public int generation(int pos) {
+            return gens[pos];
+        }
+    }
+
+    @Test
+    public void mergeBaseCrissCrossTest() {
+        History h = new History(6);
+        h.add();
+        h.add(0);
+        h.add(0);
+        h.add(1, 2);
+        h.add(2, 1);
+        h.add(3);
+        java.util.ArrayList<Integer> bases = MergeBase.findAll(h, 3, 4);
+        java.util.Collections.sort(bases);
+        assertEquals("[1, 2]", bases.toString());
+        assertEquals(1, MergeBase.find(h, 3, 4));
+        assertEquals(3, MergeBase.find(h, 5, 3));
+        assertEquals(2, MergeBase.find(h, 2, 4));
+        assertEquals(0, MergeBase.find(h, 0, 0));
+    }
+
+    @Test
+    public void mergeBaseLargeHistoryTest() {
+        final int mainLength = 100000;
+        final int branchLength = 25000;
+        final int forkAt = 50000;
+        final int mergedAt = 60000;
+        History h = new History(mainLength + branchLength);
+        h.add();
+        for (int i = 1; i < mainLength; i += 1) {
+            h.add(i - 1);
+        }
+        int tip = h.add(forkAt);
+        for (int i = 1; i < branchLength; i += 1) {
+            tip = i == branchLength / 2 ? h.add(tip, mergedAt) : h.add(tip);
+        }
+        assertEquals(mergedAt, MergeBase.find(h, mainLength - 1, tip));
+    }
+
+    @Test
+    public void commitGraphTest() {
+        File file = new File("commit-graph-test");
+        file.delete();
+        CommitGraph graph = new CommitGraph(file);
+        Commit root = new Commit();
+        root.setStore(new ObjectStore(new File("commit-graph-store")));
+        Commit child = new Commit("child", root, new java.util.ArrayList<>(),
+                new java.util.ArrayList<>());
+        graph.add(root);
+        graph.add(child);
+        graph = new CommitGraph(file);
+        assertEquals(2, graph.size());
+        assertEquals(1, graph.indexOf(child.getId()));
+        assertEquals(root.getId(), graph.id(0));
+        assertEquals(0, graph.parent1(1));
+        assertEquals(CommitGraph.NONE, graph.parent2(1));
+        assertEquals(2, graph.generation(1));
+        assertEquals(child.getTimestamp(), graph.timestamp(1));
+        assertTrue(graph.isAncestor(0, 1));
+        assertFalse(graph.isAncestor(1, 0));
+        file.delete();
+    }
+
+    @Test
+    public void refJournalTest() throws IOException {
+        File dir = new File("journal-test");
+        dir.mkdir();
+        ObjectStore store = new ObjectStore(dir);
+        store.init(HashAlgorithm.SHA1, false);
+        Commit root = new Commit();
+        store.writeCommit(root);
+        store.writeRef("master", root.getId());
+        store.writeRef("other", root.getId());
+        new File(dir, "refs/other").delete();
+        Utils.writeContents(new File(dir, "commit-graph"),
+                Utils.readContents(new File(dir, "commit-graph")),
+                new byte[] {1, 2, 3});
+        java.nio.file.Files.write(new File(dir, "journal").toPath(),
+                "- abc".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+
+        store = new ObjectStore(dir);
+        store.recover();
+        assertEquals(root.getId(), store.readRef("other"));
+        assertEquals(java.util.List.of("master", "other"), store.refNames());
+        assertEquals(1, store.graph().size());
+        store.deleteRef("other");
+        assertEquals(java.util.List.of(root.getSha1()), store.readEdges());
+        assertEquals(root.getSha1() + " - other", java.nio.file.Files
+                .readAllLines(new File(dir, "journal").toPath()).get(2));
+        deleteTree(dir);
+    }
+
+    @Test
+    public void codecTest() {
+        Commit root = new Commit();
+        root.setStore(new ObjectStore(new File("codec-store")));
+        Commit child = new Commit("child", root, new java.util.ArrayList<>(),
+                new java.util.ArrayList<>());
+        Commit merged = new Commit("merged", child, root,
+                new java.util.ArrayList<>(), new java.util.ArrayList<>());
+        for (Commit commit : new Commit[] {root, child, merged}) {
+            Commit copy = Commit.decode(commit.encode());
+            assertEquals(commit.getSha1(), copy.getSha1());
+            assertEquals(commit.getGeneration(), copy.getGeneration());
+        }
+        assertEquals(child.getId(),
+                Commit.decode(merged.encode()).getParent1Id());
+        String low = "7fffffffffffffff00000000000000000000ffff";
+        String high = "8000000000000000000000000000000000000000";
+        assertEquals(low, ObjectId.fromHex(low).name());
+        assertTrue(ObjectId.fromHex(low).compareTo(
+                ObjectId.fromHex(high)) < 0);
+        assertEquals(ObjectId.fromHex(high),
+                ObjectId.fromBytes(ObjectId.fromHex(high).toBytes(), 0));
+        assertFalse(ObjectId.isId(low.substring(1) + "g"));
+
+        Codec.Output out = new Codec.Output(0x54455354, 1);
+        out.varint(300);
+        out.string("dir/file.txt");
+        out.string(null);
+        out.string("dir/file.txt");
+        out.id(root.getId());
+        byte[] data = out.toByteArray();
+        assertEquals(4 + 1 + 2 + 14 + 1 + 1 + ObjectId.BYTES, data.length);
+        Codec.Input in = new Codec.Input(data, 0x54455354, 1);
+        assertEquals(300, in.varint());
+        assertEquals("dir/file.txt", in.string());
+        assertNull(in.string());
+        assertEquals("dir/file.txt", in.string());
+        assertEquals(root.getId(), in.id());
+        in.end();
+        try {
+            Commit.decode(data);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Unknown data format.", excp.getMessage());
+        }
+
+        String[] fields = {merged.getTreeId(),
+            merged.getParent1Id().name(), merged.getParent2Id().name(),
+            merged.getDate(), merged.getLogMessage()};
+        assertTrue(merged.encode().length
+                < Utils.serialize(fields).length);
+    }
+
+    @Test
+    public void streamingSha1Test() {
+        File file = new File("sha1-test.txt");
+        byte[] contents = new byte[3 * Utils.BUFFER_SIZE + 7];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 31);
+        }
+        Utils.writeContents(file, contents);
+        assertEquals(Utils.sha1("sha1-test.txt".getBytes(), contents),
+                Utils.sha1(file));
+        XxHash64 fast = new XxHash64();
+        Utils.sha1(file, fast);
+        assertEquals(XxHash64.hash(contents), fast.digest());
+        assertEquals(XxHash64.hash(contents), XxHash64.hash(file));
+        file.delete();
+    }
+
+    @Test
+    public void hashAlgorithmTest() {
+        assertEquals(0xef46db3751d8e999L, XxHash64.hash(new byte[0]));
+        assertEquals(0x44bc2cf5ad770999L, XxHash64.hash("abc".getBytes()));
+        assertEquals(0xfbcea83c8a378bf1L, XxHash64.hash(
+                "Nobody inspects the spammish repetition".getBytes()));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                Utils.sha1("abc"));
+        Utils.setHashAlgorithm(HashAlgorithm.SHA256);
+        try {
+            assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a3",
+                    Utils.sha1("abc"));
+            assertNotEquals(new Commit().getSha1(), "0a1d63e3040e5f61b6dc1"
+                    + "a3addd3cdc8158f5c38");
+        } finally {
+            Utils.setHashAlgorithm(HashAlgorithm.SHA1);
+        }
+        assertEquals(HashAlgorithm.SHA256, HashAlgorithm.forName("sha256"));
+        assertNull(HashAlgorithm.forName("md5"));
+    }
+
+    @Test
+    public void blobCompressionTest() {
+        File dir = new File("blob-test");
+        dir.mkdir();
+        ObjectStore store = new ObjectStore(dir);
+        File source = new File("blob-test-source.txt");
+        String text = "Lorem ipsum dolor sit amet\n".repeat(1000);
+        Utils.writeContents(source, text);
+        ObjectStore.writeBlob(source, store.blobFile("packed"));
+        Utils.writeContents(store.blobFile("loose"), text);
+        assertTrue(store.blobFile("packed").length() < text.length() / 10);
+        assertEquals(text, new String(store.readBlob("packed")));
+        assertEquals(text, new String(store.readBlob("loose")));
+        store.blobFile("packed").delete();
+        store.blobFile("loose").delete();
+        source.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void packTest() {
+        File dir = new File("pack-test");
+        dir.mkdir();
+        ObjectStore store = new ObjectStore(dir);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            text.append("log line ").append(i).append('\n');
+        }
+        String v1 = text.toString();
+        String v2 = v1.replace("line 2500\n", "line 2500 changed\n");
+        String id1 = Utils.sha1(v1);
+        String id2 = Utils.sha1(v2);
+        Utils.writeContents(store.blobFile(id1), v1);
+        Utils.writeContents(store.blobFile(id2), v2);
+        byte[] delta = Pack.delta(v1.getBytes(), v2.getBytes());
+        assertTrue(delta.length < 100);
+        assertEquals(v2, new String(Pack.applyDelta(v1.getBytes(), delta)));
+
+        java.util.HashMap<String, String> bases = new java.util.HashMap<>();
+        bases.put(id2, id1);
+        File packFile = new File(dir, "pack");
+        File indexFile = new File(dir, "pack.idx");
+        Pack.write(packFile, indexFile, java.util.List.of(id1, id2),
+                bases, store);
+        store.blobFile(id1).delete();
+        store.blobFile(id2).delete();
+        Pack pack = new Pack(packFile, indexFile);
+        assertEquals(2, pack.size());
+        assertFalse(pack.contains(Utils.sha1("missing")));
+        assertTrue(store.hasBlob(id2));
+        assertEquals(v1, new String(store.readBlob(id1)));
+        assertEquals(v2, new String(store.readBlob(id2)));
+        assertTrue(packFile.length() < v1.length() / 2);
+        packFile.delete();
+        indexFile.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void treeSharingTest() {
+        ObjectStore store = new ObjectStore(new File("tree-test"));
+        Tree tree = Tree.empty(store);
+        for (int i = 0; i < 1000; i += 1) {
+            tree = tree.with("file" + i + ".txt", Utils.sha1("v1 " + i));
+        }
+        Tree backwards = Tree.empty(store);
+        for (int i = 999; i >= 0; i -= 1) {
+            backwards = backwards.with("file" + i + ".txt",
+                    Utils.sha1("v1 " + i));
+        }
+        assertSame(tree, backwards);
+        assertEquals(1000, tree.size());
+        assertEquals(Utils.sha1("v1 500"), tree.get("file500.txt"));
+        assertNull(tree.get("file1000.txt"));
+
+        Tree changed = tree.with("file500.txt", Utils.sha1("v2 500"));
+        assertNotEquals(tree.getId(), changed.getId());
+        assertEquals(Utils.sha1("v2 500"), changed.get("file500.txt"));
+        java.util.HashSet<String> shared = new java.util.HashSet<>(
+                tree.childIDs());
+        shared.retainAll(changed.childIDs());
+        assertEquals(tree.childIDs().size() - 1, shared.size());
+
+        Tree smaller = tree;
+        for (int i = 0; i < 990; i += 1) {
+            smaller = smaller.without("file" + i + ".txt");
+        }
+        Tree small = Tree.empty(store);
+        for (int i = 990; i < 1000; i += 1) {
+            small = small.with("file" + i + ".txt", Utils.sha1("v1 " + i));
+        }
+        assertSame(small, smaller);
+        assertEquals(Tree.emptyId(), Tree.empty(store).getId());
+    }
+
+    @Test
+    public void treeDiffTest() {
+        ObjectStore store = new ObjectStore(new File("tree-test"));
+        Tree tree = Tree.empty(store);
+        for (int i = 0; i < 100; i += 1) {
+            tree = tree.with("lib/dir" + (i % 10) + "/file" + i,
+                    Utils.sha1("v1 " + i));
+        }
+        tree = tree.with("top.txt", Utils.sha1("top"));
+        assertEquals(2, tree.size());
+        assertEquals(101, tree.entries().size());
+        assertEquals(Utils.sha1("v1 42"), tree.get("lib/dir2/file42"));
+        assertNull(tree.get("lib/dir2"));
+        assertNull(tree.get("nowhere/file42"));
 
+        Tree changed = tree.with("lib/dir3/file13", Utils.sha1("v2 13"))
+                .without("top.txt").with("lib/new/file", Utils.sha1("new"));
+        java.util.TreeMap<String, String[]> diff = Tree.diff(tree, changed);
+        assertEquals(java.util.List.of("lib/dir3/file13", "lib/new/file",
+                "top.txt"), new java.util.ArrayList<>(diff.keySet()));
+        assertEquals(Utils.sha1("v1 13"), diff.get("lib/dir3/file13")[0]);
+        assertEquals(Utils.sha1("v2 13"), diff.get("lib/dir3/file13")[1]);
+        assertNull(diff.get("lib/new/file")[0]);
+        assertNull(diff.get("top.txt")[1]);
+
+        Tree emptied = changed.without("lib/new/file");
+        for (int i = 0; i < 100; i += 1) {
+            emptied = emptied.without("lib/dir" + (i % 10) + "/file" + i);
+        }
+        assertEquals(Tree.emptyId(), emptied.getId());
+    }
+
+    /** Method to get the length of a longest common subsequence of
+     *  two sequences, the slow way.
+     * @param a The first sequence
+     * @param b The second sequence
+     * @return The length */
+    static int lcsLength(int[] a, int[] b) {
+        int[][] best = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                best[i][j] = a[i] == b[j] ? best[i + 1][j + 1] + 1
+                        : Math.max(best[i + 1][j], best[i][j + 1]);
+            }
+        }
+        return best[0][0];
+    }
+
+    /** Method to check that matched lines are equal and in order.
+     * @param a The first sequence
+     * @param b The second sequence
+     * @param match The position in B matched by each element of A
+     * @return The number of matched elements */
+    static int matches(int[] a, int[] b, int[] match) {
+        int count = 0;
+        int last = -1;
+        for (int i = 0; i < a.length; i += 1) {
+            if (match[i] >= 0) {
+                assertTrue(match[i] > last);
+                assertEquals(a[i], b[match[i]]);
+                last = match[i];
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Method to merge three versions of a file given as text.
+     * @param base The split point
+     * @param ours The current version
+     * @param theirs The given version
+     * @return The merged text */
+    static String diff3(String base, String ours, String theirs)
+            throws IOException {
+        java.io.ByteArrayOutputStream out =
+                new java.io.ByteArrayOutputStream();
+        Diff3.merge(base.getBytes(), ours.getBytes(), theirs.getBytes(),
+                out);
+        return out.toString();
+    }
+
+    @Test
+    public void diff3Test() throws IOException {
+        java.util.Random random = new java.util.Random(21);
+        for (int t = 0; t < 500; t += 1) {
+            int[] a = random.ints(random.nextInt(30), 0, 4).toArray();
+            int[] b = random.ints(random.nextInt(30), 0, 4).toArray();
+            assertEquals(lcsLength(a, b), matches(a, b, Diff.myers(a, b)));
+            matches(a, b, Diff.match(a, b));
+        }
+
+        assertEquals("one\nTWO\nthree\nfour\nFIVE\n",
+                diff3("one\ntwo\nthree\nfour\nfive\n",
+                        "one\nTWO\nthree\nfour\nfive\n",
+                        "one\ntwo\nthree\nfour\nFIVE\n"));
+        assertEquals("a\nb\nc\n", diff3("a\nc\n", "a\nb\nc\n",
+                "a\nb\nc\n"));
+        String sep = System.lineSeparator();
+        assertEquals("a\n<<<<<<< HEAD" + sep + "x\n=======" + sep + "y\n"
+                + ">>>>>>>" + sep + "c\nD\n",
+                diff3("a\nb\nc\nd\n", "a\nx\nc\nd\n",
+                        "a\ny\nc\nD\n"));
+        assertEquals("a\n<<<<<<< HEAD" + sep + "x" + sep + "=======" + sep
+                + "y" + sep + ">>>>>>>" + sep,
+                diff3("a\nb", "a\nx", "a\ny"));
+        java.io.ByteArrayOutputStream out =
+                new java.io.ByteArrayOutputStream();
+        Diff3.conflict(out, "x".getBytes(), new byte[0]);
+        assertEquals("<<<<<<< HEAD" + sep + "x" + sep + "=======" + sep
+                + ">>>>>>>" + sep, out.toString());
+    }
+
+    @Test
+    public void mergedBlobIdTest() throws IOException {
+        File gitletDir = new File(".gitlet");
+        if (gitletDir.exists()) {
+            return;
+        }
+        File workFile = new File("merged.txt");
+        try {
+            Gitlet gitlet = new Gitlet();
+            gitlet.init(HashAlgorithm.SHA1, false);
+            Utils.writeContents(workFile, "a\nb\nc\nd\ne\n");
+            gitlet.process("add", "merged.txt");
+            gitlet.process("commit", "base");
+            gitlet.process("branch", "other");
+            Utils.writeContents(workFile, "A\nb\nc\nd\ne\n");
+            gitlet.process("add", "merged.txt");
+            gitlet.process("commit", "ours");
+            gitlet.process("checkout", "other");
+            Utils.writeContents(workFile, "a\nb\nc\nd\nE\n");
+            gitlet.process("add", "merged.txt");
+            gitlet.process("commit", "theirs");
+            gitlet.process("checkout", "master");
+            gitlet.process("merge", "other");
+
+            assertEquals("A\nb\nc\nd\nE\n",
+                    Utils.readContentsAsString(workFile));
+            assertEquals(Utils.sha1(workFile), gitlet.getBranch("master")
+                    .getTree().get("merged.txt"));
+        } finally {
+            workFile.delete();
+            deleteTree(gitletDir);
+        }
+    }
 
+    /** Method to delete a directory and everything in it.
+     * @param dir The directory */
+    static void deleteTree(File dir) throws IOException {
+        try (java.util.stream.Stream<java.nio.file.Path> paths =
+                     java.nio.file.Files.walk(dir.toPath())) {
+            paths.sorted(java.util.Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void diffTest() {
+        assertEquals("", Diff.unified("f", "a\n".getBytes(),
+                "a\n".getBytes()));
+        StringBuilder numbers20 = new StringBuilder();
+        for (int i = 1; i <= 20; i += 1) {
+            numbers20.append(i).append('\n');
+        }
+        String old = numbers20.toString();
+        String changed = old.replace("\n5\n", "\nfive\n") + "21";
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n"
+                + "@@ -2,7 +2,7 @@\n 2\n 3\n 4\n-5\n+five\n 6\n 7\n 8\n"
+                + "@@ -18,3 +18,4 @@\n 18\n 19\n 20\n+21\n"
+                + "\\ No newline at end of file\n",
+                Diff.unified("f", old.getBytes(), changed.getBytes()));
+        assertEquals("diff --git a/g b/g\n--- /dev/null\n+++ b/g\n"
+                + "@@ -0,0 +1 @@\n+x\n", Diff.unified("g", null,
+                "x\n".getBytes()));
+        assertEquals("diff --git a/h b/h\nBinary files a/h and b/h differ\n",
+                Diff.unified("h", new byte[] {0}, new byte[] {1}));
+
+        java.util.Random random = new java.util.Random(22);
+        StringBuilder before = new StringBuilder();
+        StringBuilder after = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            String line = i % 10 == 0 ? "}\n" : "line " + i + "\n";
+            before.append(line);
+            int edit = random.nextInt(100);
+            if (edit == 0) {
+                after.append("changed ").append(i).append('\n');
+            } else if (edit != 1) {
+                after.append(line);
+            }
+        }
+        String[] a = Diff.lines(before.toString().getBytes());
+        String[] b = Diff.lines(after.toString().getBytes());
+        int[][] numbers = Diff.number(a, b);
+        int histogram = matches(numbers[0], numbers[1],
+                Diff.match(numbers[0], numbers[1]));
+        int myers = matches(numbers[0], numbers[1],
+                Diff.myers(numbers[0], numbers[1]));
+        assertTrue(histogram <= myers && histogram > a.length * 9 / 10);
+    }
+
+    @Test
+    public void similarityTest() {
+        StringBuilder text = new StringBuilder();
+        StringBuilder edited = new StringBuilder();
+        StringBuilder other = new StringBuilder();
+        for (int i = 0; i < 100; i += 1) {
+            text.append("line ").append(i).append('\n');
+            edited.append(i % 5 == 0 ? "changed " : "line ").append(i)
+                    .append("\r\n");
+            other.append("other ").append(i).append('\n');
+        }
+        int[] one = SimilarityIndex.signature(text.toString().getBytes());
+        int[] two = SimilarityIndex.signature(edited.toString().getBytes());
+        int[] three = SimilarityIndex.signature(other.toString().getBytes());
+        int threshold = SimilarityIndex.THRESHOLD * SimilarityIndex.SIZE;
+        assertEquals(SimilarityIndex.SIZE,
+                SimilarityIndex.agreement(one, one));
+        assertTrue(SimilarityIndex.agreement(one, two) * 100 >= threshold);
+        assertTrue(SimilarityIndex.agreement(one, three) * 100 < threshold);
+        assertNull(SimilarityIndex.signature(new byte[0]));
+
+        File dir = new File("similarity-test");
+        dir.mkdir();
+        ObjectStore store = new ObjectStore(dir);
+        StringBuilder reversed = new StringBuilder();
+        for (int i = 99; i >= 0; i -= 1) {
+            reversed.append("line ").append(i).append('\n');
+        }
+        java.util.TreeMap<String, String> removed = new java.util.TreeMap<>();
+        java.util.TreeMap<String, String> added = new java.util.TreeMap<>();
+        removed.put("a.txt", blob(store, "a.txt", text));
+        removed.put("b.txt", blob(store, "b.txt", other));
+        added.put("x.txt", blob(store, "x.txt", reversed));
+        added.put("y.txt", blob(store, "y.txt", text));
+        added.put("z.txt", blob(store, "z.txt", other.append("more\n")));
+        assertEquals(java.util.Map.of("a.txt", "y.txt", "b.txt", "z.txt"),
+                new SimilarityIndex().renames(removed, added, store));
+        for (String sha1 : removed.values()) {
+            store.blobFile(sha1).delete();
+        }
+        for (String sha1 : added.values()) {
+            store.blobFile(sha1).delete();
+        }
+        dir.delete();
+    }
+
+    /** Method to write a blob of a file to a store.
+     * @param store The store
+     * @param name The name of the file
+     * @param contents The contents of the file
+     * @return The sha1 of the blob */
+    static String blob(ObjectStore store, String name,
+                       CharSequence contents) {
+        String sha1 = Utils.sha1(name, contents.toString());
+        Utils.writeContents(store.blobFile(sha1), contents.toString());
+        return sha1;
+    }
+
+    /** Method to cut some bytes into chunks.
+     * @param data The bytes
+     * @return The sha1s of the chunks, in order */
+    static java.util.List<String> chunkIds(byte[] data) throws IOException {
+        java.util.ArrayList<String> ids = new java.util.ArrayList<>();
+        java.io.ByteArrayOutputStream joined =
+                new java.io.ByteArrayOutputStream();
+        Chunker chunker = new Chunker(new java.io.ByteArrayInputStream(data));
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            joined.write(chunk);
+            ids.add(Utils.sha1(chunk));
+        }
+        assertArrayEquals(data, joined.toByteArray());
+        return ids;
+    }
+
+    @Test
+    public void chunkerTest() throws IOException {
+        byte[] data = new byte[3 << 20];
+        new java.util.Random(25).nextBytes(data);
+        java.util.List<String> before = chunkIds(data);
+        assertTrue(before.size() > 20 && before.size() < 100);
+
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 1 << 20);
+        System.arraycopy(data, 1 << 20, edited, (1 << 20) + 10,
+                data.length - (1 << 20));
+        java.util.List<String> after = chunkIds(edited);
+        java.util.HashSet<String> added = new java.util.HashSet<>(after);
+        added.removeAll(before);
+        assertTrue(added.size() <= 2);
+        assertTrue(chunkIds(new byte[0]).isEmpty());
+    }
+
+    @Test
+    public void splitCommandTest() {
+        assertArrayEquals(new String[] {"commit", "fix the \"bug\"", ""},
+                Main.splitCommand("  commit\t\"fix the \\\"bug\\\"\" \"\""));
+        assertArrayEquals(new String[] {"checkout", "--", "a b.txt"},
+                Main.splitCommand("checkout -- a\" \"b.txt"));
+        assertEquals(0, Main.splitCommand("   ").length);
+    }
+
+}
@@ -1,24 +1,25 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -32,28 +33,106 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
-    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+    /** The hash function ids are computed with, which is the one of
+     *  the repository being worked on. The functions below are named
+     *  after SHA-1, which is what it is unless the repository was
+     *  made with another one. */
+    private static HashAlgorithm hashAlgorithm = HashAlgorithm.SHA1;
+
+    /** Use ALGORITHM to compute ids from now on. */
+    static void setHashAlgorithm(HashAlgorithm algorithm) {
+        hashAlgorithm = algorithm;
+    }
+
+    /** Returns the hash function ids are computed with. */
+    static HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /** Returns the id of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = hashAlgorithm.newDigest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return toHex(md.digest());
+    }
+
+    /** The size of the buffer used to hash and copy files. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the id of FILE's path (as returned by
+     *  fileConsistency) followed by its contents. This is the id of a
+     *  working file. The contents are streamed through a fixed-size
+     *  buffer, so memory use does not grow with the size of FILE.
+     *  FILE must be a normal file.  Throws IllegalArgumentException
+     *  in case of problems. */
+    static String sha1(File file) {
+        return sha1(file, null);
+    }
+
+    /** Returns the id of FILE, as sha1(FILE) does, while also adding
+     *  the contents of FILE to FAST, unless it is null, so both hashes
+     *  come from one read of the file. */
+    static String sha1(File file, XxHash64 fast) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = fileDigest(file);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+                if (fast != null) {
+                    fast.update(buffer, 0, n);
+                }
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the id FILE has when it holds CONTENTS, as sha1(FILE)
+     *  would compute it after CONTENTS were written to FILE. This is
+     *  how files whose contents are already in memory are given ids,
+     *  so they never have to be read back. */
+    static String fileSha1(File file, byte[] contents) {
+        MessageDigest md = fileDigest(file);
+        md.update(contents);
+        return toHex(md.digest());
+    }
+
+    /** Returns a new digest that has been given the path of FILE, as
+     *  returned by fileConsistency, which every id of a working file
+     *  starts with. */
+    private static MessageDigest fileDigest(File file) {
+        MessageDigest md = hashAlgorithm.newDigest();
+        md.update(fileConsistency(file).getBytes());
+        return md;
+    }
+
+    /** The hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS =
+        "0123456789abcdef".toCharArray();
+
+    /** Returns the hexadecimal numeral of the first UID_LENGTH / 2
+     *  bytes of DIGEST, which is the id it stands for. */
+    private static String toHex(byte[] digest) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_LENGTH / 2; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
         }
+        return new String(result);
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -103,25 +182,6 @@ class Utils {
         }
     }
 
-    /** Method to read the whole contents of a file, which includes the
-     *  file's path. This is used to calculate the sha-1 of files in
-     *  the working directory.
-     * @param file The file to be read
-     * @return The byte[] of data
-     */
-    static byte[] readFullContents(File file) {
-        if (!file.isFile()) {
-            throw new IllegalArgumentException("must be a normal file");
-        }
-        byte[] path = Utils.fileConsistency(file).getBytes();
-        byte[] content = Utils.readContents(file);
-        byte[] fullContents = new byte[path.length + content.length];
-        System.arraycopy(path, 0, fullContents, 0, path.length);
-        System.arraycopy(content, 0, fullContents, path.length,
-                content.length);
-        return fullContents;
-    }
-
     /** Method to remove the "./" in the beginning of the file's
      *  path, if any.
      * @param file The file to be altered
@@ -169,25 +229,59 @@ class Utils {
         }
     }
 
-    /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
-     *  Throws IllegalArgumentException in case of problems. */
-    static <T extends Serializable> T readObject(File file,
-                                                 Class<T> expectedClass) {
+    /** Write OBJ to FILE. */
+    static void writeObject(File file, Serializable obj) {
+        writeContents(file, serialize(obj));
+    }
+
+    /** Write DATA to FILE so that, even if the program is killed or the
+     *  machine loses power part way through, FILE afterwards holds
+     *  either its old contents or all of DATA.  DATA is written to a
+     *  temporary file in the same directory, forced to disk, and then
+     *  renamed over FILE.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static void writeAtomically(File file, byte[] data) {
+        File temp = tempFile(file);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+            out.getFD().sync();
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        moveAtomically(temp, file);
+    }
+
+    /** Return a new, empty temporary file in the directory of FILE,
+     *  to be renamed over FILE once it is written.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static File tempFile(File file) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
-        } catch (IOException | ClassCastException
-                 | ClassNotFoundException excp) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            return Files.createTempFile(dir.toPath(), file.getName(),
+                                        ".tmp").toFile();
+        } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
-    static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+    /** Rename SOURCE to DEST in one step, replacing DEST if it exists,
+     *  and force the change of their directory to disk.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void moveAtomically(File source, File dest) {
+        try {
+            Files.move(source.toPath(), dest.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (FileChannel dir = FileChannel.open(
+                 dest.getAbsoluteFile().getParentFile().toPath(),
+                 StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException excp) {
+            return;
+        }
     }
 
     /* DIRECTORIES */
@@ -221,13 +315,25 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** The format of the dates of commits. */
+    static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss yyyy Z";
+
     /** Returns the current Date & Time. */
     static String getDate() {
         Date date = new java.util.Date();
-        String dateStr = new SimpleDateFormat(
-                "EEE MMM dd HH:mm:ss yyyy Z").format(date);
+        String dateStr = new SimpleDateFormat(DATE_FORMAT).format(date);
         return dateStr;
     }
+
+    /** Returns the Date & Time written in DATESTR by getDate(), or the
+     *  start of the epoch if DATESTR cannot be read. */
+    static Date parseDate(String dateStr) {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(dateStr);
+        } catch (ParseException excp) {
+            return new Date(0);
+        }
+    }
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -260,26 +366,6 @@ class Utils {
         }
     }
 
-    /** Method to deserialize a byte[] to an object.
-     * @param data The byte[] of data
-     * @return The object after deserializing the data
-     */
-    public static Object deserialize(byte[] data) {
-        Object object = null;
-        try {
-            ByteArrayInputStream stream = new ByteArrayInputStream(data);
-            ObjectInputStream in = new ObjectInputStream(stream);
-            object = in.readObject();
-            in.close();
-            stream.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        } catch (ClassNotFoundException ex) {
-            ex.printStackTrace();
-        }
-        return object;
-    }
-
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
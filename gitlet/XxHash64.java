@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+/** XxHash64 class that computes the 64-bit xxHash of a stream of
+ *  bytes. It is not a cryptographic hash, but it reads data several
+ *  times faster than SHA-1, so the stat cache uses it to tell whether
+ *  a file whose stat data changed still has the contents it last
+ *  hashed, without computing the file's id again. Data is read in
+ *  32-byte stripes spread over four lanes; bytes that do not fill a
+ *  stripe wait in a small buffer until more data comes or the hash is
+ *  finished.
+ *  @author Brian Unggul
+ */
+class XxHash64 {
+
+    /** The first prime of xxHash64. */
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+
+    /** The second prime of xxHash64. */
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    /** The third prime of xxHash64. */
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    /** The fourth prime of xxHash64. */
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    /** The fifth prime of xxHash64. */
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /** The size of a stripe in bytes. */
+    private static final int STRIPE = 32;
+
+    /** The first lane. */
+    private long v1;
+
+    /** The second lane. */
+    private long v2;
+
+    /** The third lane. */
+    private long v3;
+
+    /** The fourth lane. */
+    private long v4;
+
+    /** The bytes of the stripe that is not full yet. */
+    private final ByteBuffer pending;
+
+    /** The number of bytes hashed so far. */
+    private long length;
+
+    /** Constructor for a hash with seed 0 over no bytes yet. */
+    XxHash64() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Method to get the xxHash64 of the contents of a file.
+     * @param file The file
+     * @return The hash */
+    static long hash(File file) {
+        XxHash64 hash = new XxHash64();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[Utils.BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                hash.update(buffer, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return hash.digest();
+    }
+
+    /** Method to get the xxHash64 of some bytes.
+     * @param data The bytes
+     * @return The hash */
+    static long hash(byte[] data) {
+        XxHash64 hash = new XxHash64();
+        hash.update(data, 0, data.length);
+        return hash.digest();
+    }
+
+    /** Method to add some bytes to the hash.
+     * @param data The array holding the bytes
+     * @param off The offset of the first byte
+     * @param len The number of bytes */
+    void update(byte[] data, int off, int len) {
+        length += len;
+        if (pending.position() > 0) {
+            int n = Math.min(len, pending.remaining());
+            pending.put(data, off, n);
+            off += n;
+            len -= n;
+            if (pending.hasRemaining()) {
+                return;
+            }
+            stripe(pending, 0);
+            pending.clear();
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        while (len >= STRIPE) {
+            stripe(buf, off);
+            off += STRIPE;
+            len -= STRIPE;
+        }
+        pending.put(data, off, len);
+    }
+
+    /** Helper method for update() that mixes one stripe into the
+     *  lanes.
+     * @param buf The buffer holding the stripe, in little-endian order
+     * @param pos The offset of the stripe in the buffer */
+    private void stripe(ByteBuffer buf, int pos) {
+        v1 = round(v1, buf.getLong(pos));
+        v2 = round(v2, buf.getLong(pos + 8));
+        v3 = round(v3, buf.getLong(pos + 16));
+        v4 = round(v4, buf.getLong(pos + 24));
+    }
+
+    /** Method to finish the hash.
+     * @return The 64-bit hash of every byte added */
+    long digest() {
+        long h;
+        if (length >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += length;
+        int end = pending.position();
+        int pos = 0;
+        for (; pos + 8 <= end; pos += 8) {
+            h ^= round(0, pending.getLong(pos));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (pos + 4 <= end) {
+            h ^= (pending.getInt(pos) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+        for (; pos < end; pos += 1) {
+            h ^= (pending.get(pos) & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    /** Method to mix eight bytes of input into a lane.
+     * @param acc The lane
+     * @param input The eight bytes, as a little-endian long
+     * @return The new value of the lane */
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    /** Method to fold a lane into the hash of a long input.
+     * @param h The hash so far
+     * @param lane The lane
+     * @return The new hash */
+    private static long merge(long h, long lane) {
+        h ^= round(0, lane);
+        return h * PRIME1 + PRIME4;
+    }
+
+}